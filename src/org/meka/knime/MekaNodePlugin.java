@@ -40,6 +40,8 @@ import weka.core.Environment;
 import meka.classifiers.multilabel.MultiLabelClassifier;
 import meka.gui.goe.GenericObjectEditor;
 
+import org.meka.knime.utils.MekaWarmupTask;
+
 /**
  * This is the eclipse bundle activator. Note: KNIME node vendors probably won't
  * have to do anything here, as this class is only needed by the eclipse
@@ -51,6 +53,15 @@ public class MekaNodePlugin extends Plugin {
     // The shared instance.
     private static MekaNodePlugin plugin;
 
+    /**
+     * System property to disable the background warm-up of the MEKA classes
+     * (e.g. <code>-Dorg.meka.knime.warmup=false</code> in the knime.ini).
+     */
+    public static final String WARMUP_PROPERTY = "org.meka.knime.warmup";
+
+    /* The background warm-up, null if disabled or finished. */
+    private MekaWarmupTask m_warmup;
+
     /**
      * The constructor.
      */
@@ -65,6 +76,23 @@ public class MekaNodePlugin extends Plugin {
 
     }
 
+    /**
+     * This method is called upon plug-in activation. Unless disabled by the
+     * {@link #WARMUP_PROPERTY}, the MEKA classes are loaded and exercised in
+     * a low-priority background thread.
+     * 
+     * @param context The OSGI bundle context
+     * @throws Exception If this plugin could not be started
+     */
+    @Override
+    public void start(final BundleContext context) throws Exception {
+        super.start(context);
+        if (Boolean.parseBoolean(System.getProperty(WARMUP_PROPERTY, "true"))) {
+            m_warmup = new MekaWarmupTask();
+            m_warmup.start();
+        }
+    }
+
     /**
      * This method is called when the plug-in is stopped.
      * 
@@ -73,6 +101,10 @@ public class MekaNodePlugin extends Plugin {
      */
     @Override
     public void stop(final BundleContext context) throws Exception {
+        if (m_warmup != null) {
+            m_warmup.requestStop();
+            m_warmup = null;
+        }
         super.stop(context);
         plugin = null;
     }
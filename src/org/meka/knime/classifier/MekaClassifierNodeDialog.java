@@ -41,7 +41,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
@@ -50,6 +52,7 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
+import javax.swing.SwingWorker;
 import javax.swing.border.Border;
 
 import meka.classifiers.multilabel.MultiLabelClassifier;
@@ -75,6 +78,9 @@ import org.meka.knime.utils.MekaConverter;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.trees.J48;
+import weka.core.Capabilities;
+import weka.core.OptionHandler;
+import weka.core.Utils;
 import weka.gui.PropertySheetPanel;
 
 /**
@@ -118,6 +124,19 @@ public class MekaClassifierNodeDialog extends NodeDialogPane {
 
     /* JPanel holding all dialog components */
     private final JPanel m_all;
+
+    /* The running attribute check, null if none is running */
+    private AttributeCheckWorker m_checkWorker;
+
+    /* Spec of the last complete check */
+    private DataTableSpec m_checkSpec;
+
+    /* Class attribute and classifier configuration of the last complete
+     * check */
+    private String m_checkKey;
+
+    /* Results of the last complete check */
+    private String[] m_checkResults;
     
     public static DialogComponentColumnFilter m_columnFilter;
     
@@ -294,8 +313,15 @@ public class MekaClassifierNodeDialog extends NodeDialogPane {
         m_columnFilter.loadSettingsFrom(settings, new DataTableSpec[] {m_spec});
     }
     
+    /*
+     * Creates the attribute info panel. The labels are filled by a background
+     * worker, so the dialog stays responsive on wide tables. A previous check
+     * is canceled; the results of a check are reused as long as neither the
+     * spec nor the classifier configuration changes.
+     */
     private JComponent createAttrInfo(final DataTableSpec spec) {
         //if (spec == null || m_colsel.getSelectedColumn() == null) {
+        cancelAttributeCheck();
     	if (spec == null ) {
             return new JPanel();
         }
@@ -303,30 +329,166 @@ public class MekaClassifierNodeDialog extends NodeDialogPane {
         BoxLayout yaxis = new BoxLayout(content, BoxLayout.PAGE_AXIS);
         content.setLayout(yaxis);
 
-        MekaConverter con = new MekaConverter(spec);
-        String[] ok =
-                //con.testAttributes(m_classifier.getClassifier(), m_classifier.m_colsel.getSelectedColumn());
-        		//con.testAttributes(m_classifier.getClassifier(), m_columnFilter.getInvalidIncludeColumns());
-        		con.testAttributes(m_classifier, m_columnFilter.getInvalidExcludeColumns().toString()); // Problem is that we do not have classifier so the test is not performed properly about the columns
-        for (int i = 0; i < ok.length; i++) {
+        // Problem is that we do not have classifier so the test is not performed properly about the columns
+        String classattribute =
+                m_columnFilter.getInvalidExcludeColumns().toString();
+        String key = createCheckKey(classattribute);
+        JLabel[] oklabels = new JLabel[spec.getNumColumns()];
+        for (int i = 0; i < oklabels.length; i++) {
             JPanel colpanel = new JPanel();
             BoxLayout xaxis = new BoxLayout(colpanel, BoxLayout.X_AXIS);
             colpanel.setLayout(xaxis);
             JLabel colname = new JLabel(spec.getColumnSpec(i).getName() + ": ");
-            JLabel oklabel = new JLabel();
-            if (ok[i].equals("")) {
-                oklabel.setForeground(new Color(0, 215, 0));
-                oklabel.setText("ok");
-            } else {
-                oklabel.setForeground(Color.red);
-                oklabel.setText(ok[i]);
-            }
+            oklabels[i] = new JLabel("checking...");
             colpanel.add(colname);
-            colpanel.add(oklabel);
+            colpanel.add(oklabels[i]);
             content.add(colpanel);
         }
+        if (spec.equals(m_checkSpec) && key.equals(m_checkKey)
+                && m_checkResults != null) {
+            for (int i = 0; i < oklabels.length; i++) {
+                setAttrInfo(oklabels[i], m_checkResults[i]);
+            }
+        } else {
+            // the classifier is edited on the event dispatch thread
+            Capabilities cap =
+                    (Capabilities)m_classifier.getCapabilities().clone();
+            m_checkWorker = new AttributeCheckWorker(spec, classattribute,
+                    key, cap, oklabels);
+            m_checkWorker.execute();
+        }
         return content;
     }
+
+    /* Shows the result of a single attribute check in the given label. */
+    private static void setAttrInfo(final JLabel oklabel, final String ok) {
+        if (ok.equals("")) {
+            oklabel.setForeground(new Color(0, 215, 0));
+            oklabel.setText("ok");
+        } else {
+            oklabel.setForeground(Color.red);
+            oklabel.setText(ok);
+        }
+    }
+
+    /* Identifies a check of a spec by class attribute and classifier
+     * options. */
+    private String createCheckKey(final String classattribute) {
+        String options = m_classifier.getClass().getName();
+        if (m_classifier instanceof OptionHandler) {
+            options += " " + Utils.joinOptions(
+                    ((OptionHandler)m_classifier).getOptions());
+        }
+        return classattribute + "|" + options;
+    }
+
+    /* Cancels a running attribute check, if any. */
+    private void cancelAttributeCheck() {
+        if (m_checkWorker != null) {
+            m_checkWorker.cancel(true);
+            m_checkWorker = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onClose() {
+        cancelAttributeCheck();
+        super.onClose();
+    }
+
+    /*
+     * Tests the columns against the classifier capabilities off the event
+     * dispatch thread. The weka attributes are created once, the
+     * capabilities are a copy taken on the event dispatch thread; each
+     * result is published to its label as soon as it is known.
+     */
+    private final class AttributeCheckWorker
+            extends SwingWorker<String[], Integer> {
+
+        private final DataTableSpec m_specToCheck;
+
+        private final String m_classattribute;
+
+        private final String m_key;
+
+        private final Capabilities m_capabilities;
+
+        private final JLabel[] m_labels;
+
+        private final String[] m_results;
+
+        AttributeCheckWorker(final DataTableSpec spec,
+                final String classattribute, final String key,
+                final Capabilities capabilities, final JLabel[] labels) {
+            m_specToCheck = spec;
+            m_classattribute = classattribute;
+            m_key = key;
+            m_capabilities = capabilities;
+            m_labels = labels;
+            m_results = new String[labels.length];
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected String[] doInBackground() throws Exception {
+            MekaConverter con = new MekaConverter(m_specToCheck);
+            for (int i = 0; i < m_results.length; i++) {
+                if (isCancelled()) {
+                    return null;
+                }
+                m_results[i] = con.testAttribute(m_capabilities, i,
+                        m_classattribute);
+                publish(i);
+            }
+            return m_results;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void process(final List<Integer> chunks) {
+            if (isCancelled()) {
+                return;
+            }
+            for (Integer i : chunks) {
+                setAttrInfo(m_labels[i], m_results[i]);
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                String[] results = get();
+                if (results != null) {
+                    m_checkSpec = m_specToCheck;
+                    m_checkKey = m_key;
+                    m_checkResults = results;
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Preliminary attribute check failed", e);
+                // the columns not checked show the failure
+                Throwable cause = e instanceof ExecutionException
+                        && e.getCause() != null ? e.getCause() : e;
+                String error = cause.getMessage();
+                if (error == null || error.isEmpty()) {
+                    error = cause.getClass().getSimpleName();
+                }
+                for (int i = 0; i < m_labels.length; i++) {
+                    setAttrInfo(m_labels[i],
+                            m_results[i] != null ? m_results[i] : error);
+                }
+            }
+            if (m_checkWorker == this) {
+                m_checkWorker = null;
+            }
+        }
+    }
     
     /**
      * {@inheritDoc}
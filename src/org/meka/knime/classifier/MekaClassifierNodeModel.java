@@ -70,6 +70,7 @@ import org.knime.core.util.KNIMETimer;
 import org.meka.knime.classifier.MekaClassifierNodeModel;
 import org.meka.knime.ports.MekaClassifierModelPortObject;
 import org.meka.knime.ports.MekaClassifierModelPortObjectSpec;
+import org.meka.knime.utils.DatasetProfile;
 import org.meka.knime.utils.MekaClassifierCreationTask;
 import org.meka.knime.utils.MekaConverter;
 
@@ -192,7 +193,9 @@ public class MekaClassifierNodeModel extends NodeModel {
         MekaConverter mekacon = new MekaConverter(spec);
         Instances trainingInstances =
                 mekacon.convertToMeka(bdt, convertExecMonitor);
-        LOGGER.info(trainingInstances.toSummaryString());
+        // the summary is a full pass over the data, computed only if logged
+        DatasetProfile profile = new DatasetProfile(trainingInstances);
+        profile.info(LOGGER);
                       
         DataCellStringMapper mapper = mekacon.getMapping();
 
@@ -267,7 +270,7 @@ public class MekaClassifierNodeModel extends NodeModel {
                 new MekaClassifierModelPortObjectSpec(m_classcols, spec);
         MekaClassifierModelPortObject mekaout =
                 new MekaClassifierModelPortObject(classifier,
-                        trainingInstances, mapper, out);
+                        trainingInstances, mapper, out, profile);
         m_lastClassifier = (MultiLabelClassifier) classifier;
         return new PortObject[]{mekaout};
     }
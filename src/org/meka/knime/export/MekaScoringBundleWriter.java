@@ -0,0 +1,226 @@
+package org.meka.knime.export;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import meka.classifiers.multilabel.MultiLabelClassifier;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.knime.core.node.NodeLogger;
+import org.meka.knime.scoring.LatencyHistogram;
+import org.meka.knime.scoring.MekaScoringLoadTest;
+import org.meka.knime.scoring.MekaScoringMain;
+import org.meka.knime.scoring.MekaScoringModel;
+import org.meka.knime.scoring.MekaScoringServer;
+import org.meka.knime.utils.ReusableInstance;
+
+import weka.core.Instances;
+
+/**
+ * Writes a {@link MekaScoringModel} as a scoring bundle: a directory with an
+ * executable <code>meka-scoring.jar</code> (the model, the scoring classes
+ * and {@link MekaScoringMain} as entry point) and a <code>lib</code>
+ * directory with only the library jars the model needs, i.e. the jars of
+ * the classes written when the model is serialized, plus the MEKA and WEKA
+ * jars. No KNIME classes are needed to run the bundle.
+ *
+ * @author Fernando Benites
+ */
+public final class MekaScoringBundleWriter {
+
+    private static final NodeLogger LOGGER = NodeLogger
+            .getLogger(MekaScoringBundleWriter.class);
+
+    /** Name of the executable jar of a bundle. */
+    public static final String BUNDLE_JAR = "meka-scoring.jar";
+
+    /** Directory of the library jars of a bundle. */
+    public static final String LIB_DIR = "lib";
+
+    /* The classes run by the bundle, with their nested classes. */
+    private static final Class<?>[] RUNTIME_CLASSES = {MekaScoringMain.class,
+        MekaScoringModel.class, MekaScoringServer.class,
+        LatencyHistogram.class, MekaScoringLoadTest.class,
+        ReusableInstance.class};
+
+    private MekaScoringBundleWriter() {
+        // utility class
+    }
+
+    /**
+     * @param model the model.
+     * @param dir the bundle directory, created if needed; an existing bundle
+     *            is overwritten.
+     * @return the library jars copied to the bundle.
+     * @throws IOException if the bundle cannot be written.
+     */
+    public static List<File> write(final MekaScoringModel model,
+            final File dir) throws IOException {
+        // the classes of the model are recorded while it is serialized
+        final Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes) {
+            @Override
+            protected void annotateClass(final Class<?> cl) {
+                classes.add(cl);
+            }
+        };
+        out.writeObject(model);
+        out.close();
+        classes.add(MultiLabelClassifier.class);
+        classes.add(Instances.class);
+
+        Set<File> jars = new LinkedHashSet<File>();
+        for (Class<?> cl : classes) {
+            if (cl.getName().startsWith("org.meka.knime.")) {
+                continue;
+            }
+            File jar = locate(cl);
+            if (jar != null) {
+                jars.add(jar);
+            }
+        }
+
+        File lib = new File(dir, LIB_DIR);
+        if (!lib.isDirectory() && !lib.mkdirs()) {
+            throw new IOException("Could not create " + lib);
+        }
+        List<File> copied = new ArrayList<File>();
+        StringBuilder classPath = new StringBuilder();
+        for (File jar : jars) {
+            File target = new File(lib, jar.getName());
+            copy(jar, target);
+            copied.add(target);
+            classPath.append(classPath.length() > 0 ? " " : "")
+                    .append(LIB_DIR).append('/').append(jar.getName());
+        }
+
+        Manifest manifest = new Manifest();
+        Attributes main = manifest.getMainAttributes();
+        main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        main.put(Attributes.Name.MAIN_CLASS, MekaScoringMain.class.getName());
+        main.put(Attributes.Name.CLASS_PATH, classPath.toString());
+        JarOutputStream jar = new JarOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(dir, BUNDLE_JAR))), manifest);
+        try {
+            jar.putNextEntry(new JarEntry(
+                    MekaScoringMain.MODEL_RESOURCE.substring(1)));
+            bytes.writeTo(jar);
+            jar.closeEntry();
+            for (Class<?> cl : RUNTIME_CLASSES) {
+                writeClass(jar, cl);
+            }
+        } finally {
+            jar.close();
+        }
+        return copied;
+    }
+
+    /*
+     * Writes the class file of a class, of its member classes and of its
+     * anonymous classes (numbered from 1).
+     */
+    private static void writeClass(final JarOutputStream jar,
+            final Class<?> cl) throws IOException {
+        String name = cl.getName().replace('.', '/') + ".class";
+        writeResource(jar, cl, name);
+        for (Class<?> member : cl.getDeclaredClasses()) {
+            writeClass(jar, member);
+        }
+        String outer = cl.getName().replace('.', '/');
+        for (int i = 1; writeResource(jar, cl, outer + "$" + i + ".class");
+                i++) {
+            // all anonymous classes
+        }
+    }
+
+    private static boolean writeResource(final JarOutputStream jar,
+            final Class<?> cl, final String name) throws IOException {
+        InputStream in = cl.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            return false;
+        }
+        try {
+            jar.putNextEntry(new JarEntry(name));
+            copy(in, jar);
+            jar.closeEntry();
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+
+    /*
+     * The jar file a class is loaded from, null for the classes of the JDK
+     * and classes not loaded from a jar file.
+     */
+    private static File locate(final Class<?> cl) throws IOException {
+        ClassLoader loader = cl.getClassLoader();
+        if (loader == null) {
+            return null;
+        }
+        URL url = loader.getResource(cl.getName().replace('.', '/')
+                + ".class");
+        if (url == null) {
+            return null;
+        }
+        if (url.getProtocol().startsWith("bundle")) {
+            // a jar on the class path of an OSGi bundle
+            url = FileLocator.resolve(url);
+        }
+        String spec = url.toString();
+        int sep = spec.indexOf("!/");
+        if (!spec.startsWith("jar:") || sep < 0) {
+            LOGGER.warn("Class " + cl.getName() + " is not loaded from a"
+                    + " jar file (" + url + "), add it to the bundle");
+            return null;
+        }
+        try {
+            return new File(new URI(spec.substring(4, sep)));
+        } catch (URISyntaxException use) {
+            throw new IOException("Cannot locate " + spec, use);
+        }
+    }
+
+    private static void copy(final File from, final File to)
+            throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                copy(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void copy(final InputStream in, final OutputStream out)
+            throws IOException {
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+}
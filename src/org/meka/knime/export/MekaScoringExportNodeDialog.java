@@ -0,0 +1,28 @@
+package org.meka.knime.export;
+
+import javax.swing.JFileChooser;
+
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentFileChooser;
+
+/**
+ * <code>NodeDialog</code> for the "MekaScoringExport" Node.
+ *
+ * @author Fernando Benites
+ */
+public class MekaScoringExportNodeDialog extends DefaultNodeSettingsPane {
+
+    /**
+     * New pane for configuring the scoring export.
+     */
+    protected MekaScoringExportNodeDialog() {
+        addDialogComponent(new DialogComponentFileChooser(
+                MekaScoringExportNodeModel.createDirectoryModel(),
+                MekaScoringExportNodeDialog.class.getName(),
+                JFileChooser.SAVE_DIALOG, true));
+        addDialogComponent(new DialogComponentBoolean(
+                MekaScoringExportNodeModel.createOverwriteModel(),
+                "Overwrite an existing bundle"));
+    }
+}
@@ -0,0 +1,58 @@
+package org.meka.knime.export;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "MekaScoringExport" Node.
+ *
+ *
+ * @author Fernando Benites
+ */
+public class MekaScoringExportNodeFactory
+        extends NodeFactory<MekaScoringExportNodeModel> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MekaScoringExportNodeModel createNodeModel() {
+        return new MekaScoringExportNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<MekaScoringExportNodeModel> createNodeView(
+            final int viewIndex,
+            final MekaScoringExportNodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new MekaScoringExportNodeDialog();
+    }
+
+}
@@ -0,0 +1,170 @@
+package org.meka.knime.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.meka.knime.ports.MekaClassifierModelPortObject;
+import org.meka.knime.scoring.MekaScoringModel;
+
+/**
+ * This is the model implementation of the scoring export. It writes the
+ * model at its input port as a scoring bundle
+ * ({@link MekaScoringBundleWriter}), which scores rows with the classifier
+ * and the training header only and runs without KNIME.
+ *
+ * @author Fernando Benites
+ */
+public class MekaScoringExportNodeModel extends NodeModel {
+
+    private static final NodeLogger LOGGER = NodeLogger
+            .getLogger(MekaScoringExportNodeModel.class);
+
+    /** Settings key of the bundle directory. */
+    static final String DIRECTORY_KEY = "Directory";
+
+    /** Settings key of the overwrite flag. */
+    static final String OVERWRITE_KEY = "Overwrite";
+
+    /* The bundle directory. */
+    private final SettingsModelString m_directory = createDirectoryModel();
+
+    /* True if an existing bundle is overwritten. */
+    private final SettingsModelBoolean m_overwrite = createOverwriteModel();
+
+    /**
+     * Constructor for the node model.
+     */
+    protected MekaScoringExportNodeModel() {
+        super(new PortType[]{MekaClassifierModelPortObject.TYPE},
+                new PortType[0]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
+            throws InvalidSettingsException {
+        String directory = m_directory.getStringValue();
+        if (directory == null || directory.trim().isEmpty()) {
+            throw new InvalidSettingsException("No bundle directory set");
+        }
+        if (!m_overwrite.getBooleanValue() && new File(directory,
+                MekaScoringBundleWriter.BUNDLE_JAR).exists()) {
+            setWarningMessage("The bundle in " + directory
+                    + " exists and will not be overwritten");
+        }
+        return new PortObjectSpec[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObject[] execute(final PortObject[] inData,
+            final ExecutionContext exec) throws Exception {
+        MekaClassifierModelPortObject model =
+                (MekaClassifierModelPortObject)inData[0];
+        File directory = new File(m_directory.getStringValue());
+        if (!m_overwrite.getBooleanValue() && new File(directory,
+                MekaScoringBundleWriter.BUNDLE_JAR).exists()) {
+            throw new IOException("The bundle in " + directory
+                    + " exists, select overwrite to replace it");
+        }
+        // calibrating the thresholds may predict the training data
+        MekaScoringModel scoringModel =
+                model.createScoringModel(exec.createSubProgress(.8));
+        exec.setMessage("Writing bundle");
+        List<File> jars = MekaScoringBundleWriter.write(scoringModel,
+                directory);
+        LOGGER.info("Wrote " + MekaScoringBundleWriter.BUNDLE_JAR + " with "
+                + jars.size() + " library jars to " + directory);
+        exec.setProgress(1.0);
+        return new PortObject[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void reset() {
+        // nothing to reset
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveSettingsTo(final NodeSettingsWO settings) {
+        m_directory.saveSettingsTo(settings);
+        m_overwrite.saveSettingsTo(settings);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadValidatedSettingsFrom(final NodeSettingsRO settings)
+            throws InvalidSettingsException {
+        m_directory.loadSettingsFrom(settings);
+        m_overwrite.loadSettingsFrom(settings);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void validateSettings(final NodeSettingsRO settings)
+            throws InvalidSettingsException {
+        m_directory.validateSettings(settings);
+        m_overwrite.validateSettings(settings);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadInternals(final File internDir,
+            final ExecutionMonitor exec) throws IOException,
+            CanceledExecutionException {
+        // no internals
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveInternals(final File internDir,
+            final ExecutionMonitor exec) throws IOException,
+            CanceledExecutionException {
+        // no internals
+    }
+
+    /**
+     * @return the settings model of the bundle directory.
+     */
+    static SettingsModelString createDirectoryModel() {
+        return new SettingsModelString(DIRECTORY_KEY, "");
+    }
+
+    /**
+     * @return the settings model of the overwrite flag.
+     */
+    static SettingsModelBoolean createOverwriteModel() {
+        return new SettingsModelBoolean(OVERWRITE_KEY, false);
+    }
+}
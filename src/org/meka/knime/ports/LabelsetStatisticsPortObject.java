@@ -0,0 +1,191 @@
+/*
+ * ------------------------------------------------------------------
+ * Copyright by
+ * University of Konstanz, Germany.
+ * Chair for Bioinformatics and Information Mining
+ * Prof. Dr. Michael R. Berthold
+ *
+ * This file is part of the MEKA integration plugin for KNIME.
+ *
+ * The MEKA integration plugin is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St., Fifth Floor, Boston, MA 02110-1301, USA.
+ * Or contact us: contact@knime.org.
+ * ---------------------------------------------------------------------
+ */
+package org.meka.knime.ports;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+
+import org.knime.core.data.util.NonClosableInputStream;
+import org.knime.core.data.util.NonClosableOutputStream;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortObjectZipInputStream;
+import org.knime.core.node.port.PortObjectZipOutputStream;
+import org.knime.core.node.port.PortType;
+import org.meka.knime.utils.LabelsetStatistics;
+
+/**
+ * A port holding mergeable label set statistics (row count, label counts,
+ * label co-occurrence and label set histogram), so that partial results of
+ * several executions or chunks can be combined without rescanning the data.
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetStatisticsPortObject implements PortObject {
+
+    /**
+     * The Port Type.
+     */
+    public static final PortType TYPE = new PortType(
+            LabelsetStatisticsPortObject.class);
+
+    private static final NodeLogger LOGGER = NodeLogger
+            .getLogger(LabelsetStatisticsPortObject.class);
+
+    /**
+     * @return Serializer for the {@link LabelsetStatisticsPortObject}
+     */
+    public static PortObjectSerializer<LabelsetStatisticsPortObject> getPortObjectSerializer() {
+        return new PortObjectSerializer<LabelsetStatisticsPortObject>() {
+
+            /** {@inheritDoc} */
+            @Override
+            public void savePortObject(
+                    final LabelsetStatisticsPortObject portObject,
+                    final PortObjectZipOutputStream out,
+                    final ExecutionMonitor exec) throws IOException,
+                    CanceledExecutionException {
+                portObject.save(out);
+            }
+
+            /** {@inheritDoc} */
+            @Override
+            public LabelsetStatisticsPortObject loadPortObject(
+                    final PortObjectZipInputStream in,
+                    final PortObjectSpec spec, final ExecutionMonitor exec)
+                    throws IOException, CanceledExecutionException {
+                return load(in, (LabelsetStatisticsPortObjectSpec)spec);
+            }
+        };
+    }
+
+    private void save(final PortObjectZipOutputStream out) throws IOException {
+        out.putNextEntry(new ZipEntry("statistics.bin"));
+        DataOutputStream dout =
+                new DataOutputStream(new NonClosableOutputStream.Zip(out));
+        try {
+            m_statistics.save(dout);
+        } finally {
+            dout.close();
+        }
+    }
+
+    private static LabelsetStatisticsPortObject load(
+            final PortObjectZipInputStream in,
+            final LabelsetStatisticsPortObjectSpec spec) throws IOException {
+        ZipEntry zentry = in.getNextEntry();
+        assert zentry.getName().equals("statistics.bin");
+        DataInputStream din =
+                new DataInputStream(new NonClosableInputStream.Zip(in));
+        try {
+            return new LabelsetStatisticsPortObject(
+                    LabelsetStatistics.load(din), spec);
+        } finally {
+            try {
+                din.close();
+            } catch (Exception e) {
+                LOGGER.debug("Could not close stream", e);
+            }
+        }
+    }
+
+    private final LabelsetStatistics m_statistics;
+
+    private final LabelsetStatisticsPortObjectSpec m_spec;
+
+    /**
+     * @param statistics the statistics.
+     * @param spec the spec with the label names.
+     */
+    public LabelsetStatisticsPortObject(final LabelsetStatistics statistics,
+            final LabelsetStatisticsPortObjectSpec spec) {
+        m_statistics = statistics;
+        m_spec = spec;
+    }
+
+    /**
+     * @return the statistics, must not be modified.
+     */
+    public LabelsetStatistics getStatistics() {
+        return m_statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LabelsetStatisticsPortObjectSpec getSpec() {
+        return m_spec;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getSummary() {
+        return m_statistics.getNrRows() + " rows, "
+                + m_statistics.getNrLabels() + " labels";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JComponent[] getViews() {
+        StringBuilder text = new StringBuilder();
+        text.append("Rows: ").append(m_statistics.getNrRows()).append('\n');
+        text.append("Label cardinality: ")
+                .append(m_statistics.getCardinality()).append('\n');
+        text.append("Unique label sets: ")
+                .append(m_statistics.getNrUniqueLabelsets());
+        if (m_statistics.isApproximate()) {
+            text.append(" (relative std. error ")
+                    .append(m_statistics.getUniqueLabelsetsError())
+                    .append(')');
+        }
+        text.append("\n\nLabel counts:\n");
+        String[] labels = m_spec.getLabels();
+        for (int l = 0; l < labels.length; l++) {
+            text.append(labels[l]).append(": ")
+                    .append(m_statistics.getLabelCount(l)).append('\n');
+        }
+        JPanel panel = new JPanel();
+        JTextArea field = new JTextArea(text.toString());
+        field.setEditable(false);
+        panel.add(field);
+        JComponent comp = new JScrollPane(panel);
+        comp.setName("Label set statistics");
+        return new JComponent[]{comp};
+    }
+}
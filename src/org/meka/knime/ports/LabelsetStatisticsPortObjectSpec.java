@@ -0,0 +1,251 @@
+/*
+ * ------------------------------------------------------------------
+ * Copyright by
+ * University of Konstanz, Germany.
+ * Chair for Bioinformatics and Information Mining
+ * Prof. Dr. Michael R. Berthold
+ *
+ * This file is part of the MEKA integration plugin for KNIME.
+ *
+ * The MEKA integration plugin is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St., Fifth Floor, Boston, MA 02110-1301, USA.
+ * Or contact us: contact@knime.org.
+ * ---------------------------------------------------------------------
+ */
+package org.meka.knime.ports;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+
+import javax.swing.JComponent;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContent;
+import org.knime.core.node.ModelContentRO;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortObjectSpecZipInputStream;
+import org.knime.core.node.port.PortObjectSpecZipOutputStream;
+
+/**
+ * Spec of a {@link LabelsetStatisticsPortObject}: the names of the labels the
+ * statistics are computed over, their mode, the size of their sketches and
+ * whether they count the label co-occurrences. Only statistics with equal
+ * specs can be merged.
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetStatisticsPortObjectSpec implements PortObjectSpec {
+
+    private static final NodeLogger LOGGER = NodeLogger
+            .getLogger(LabelsetStatisticsPortObjectSpec.class);
+
+    /*
+     * Model info identifier.
+     */
+    private static final String MODEL_INFO = "model_info";
+
+    /*
+     * Key to store the label names.
+     */
+    private static final String LABELS_KEY = "Labels";
+
+    /*
+     * Key to store the approximate flag.
+     */
+    private static final String APPROXIMATE_KEY = "Approximate";
+
+    /*
+     * Key to store the precision of the distinct label set sketch.
+     */
+    private static final String PRECISION_KEY = "Precision";
+
+    /*
+     * Key to store the capacity of the frequent label set sketch.
+     */
+    private static final String CAPACITY_KEY = "Capacity";
+
+    /*
+     * Key to store the co-occurrence flag.
+     */
+    private static final String COOCCURRENCE_KEY = "Cooccurrence";
+
+    /**
+     * @return Serializer for the {@link LabelsetStatisticsPortObjectSpec}.
+     */
+    public static PortObjectSpecSerializer<LabelsetStatisticsPortObjectSpec> getPortObjectSpecSerializer() {
+        return new PortObjectSpecSerializer<LabelsetStatisticsPortObjectSpec>() {
+            /** {@inheritDoc} */
+            @Override
+            public void savePortObjectSpec(
+                    final LabelsetStatisticsPortObjectSpec portObject,
+                    final PortObjectSpecZipOutputStream out) throws IOException {
+                portObject.save(out);
+            }
+
+            /** {@inheritDoc} */
+            @Override
+            public LabelsetStatisticsPortObjectSpec loadPortObjectSpec(
+                    final PortObjectSpecZipInputStream in) throws IOException {
+                return load(in);
+            }
+        };
+    }
+
+    private void save(final PortObjectSpecZipOutputStream out) {
+        ModelContent model = new ModelContent(MODEL_INFO);
+        model.addStringArray(LABELS_KEY, m_labels);
+        model.addBoolean(APPROXIMATE_KEY, m_approximate);
+        model.addBoolean(COOCCURRENCE_KEY, m_cooccurrence);
+        model.addInt(PRECISION_KEY, m_precision);
+        model.addInt(CAPACITY_KEY, m_capacity);
+        try {
+            out.putNextEntry(new ZipEntry("labels.xmlout"));
+            model.saveToXML(out);
+        } catch (IOException ioe) {
+            LOGGER.error("Internal error: Could not save settings", ioe);
+        }
+    }
+
+    private static LabelsetStatisticsPortObjectSpec load(
+            final PortObjectSpecZipInputStream in) {
+        ModelContentRO model = null;
+        try {
+            ZipEntry zentry = in.getNextEntry();
+            assert zentry.getName().equals("labels.xmlout");
+            model = ModelContent.loadFromXML(in);
+        } catch (IOException ioe) {
+            LOGGER.error("Internal error: Could not load settings", ioe);
+        }
+        String[] labels = null;
+        boolean approximate = false;
+        boolean cooccurrence = false;
+        int precision = 0;
+        int capacity = 0;
+        try {
+            labels = model.getStringArray(LABELS_KEY);
+            approximate = model.getBoolean(APPROXIMATE_KEY);
+            cooccurrence = model.getBoolean(COOCCURRENCE_KEY);
+            precision = model.getInt(PRECISION_KEY);
+            capacity = model.getInt(CAPACITY_KEY);
+        } catch (InvalidSettingsException ise) {
+            LOGGER.error("Internal error: Could not load settings", ise);
+        }
+        return new LabelsetStatisticsPortObjectSpec(labels, approximate,
+                precision, capacity, cooccurrence);
+    }
+
+    private final String[] m_labels;
+
+    private final boolean m_approximate;
+
+    private final int m_precision;
+
+    private final int m_capacity;
+
+    private final boolean m_cooccurrence;
+
+    /**
+     * @param labels the names of the labels.
+     * @param approximate true if the label sets are estimated with sketches.
+     * @param precision the precision of the distinct label set sketch, 0 in
+     *            exact mode.
+     * @param capacity the capacity of the frequent label set sketch, 0 in
+     *            exact mode.
+     * @param cooccurrence true if the label co-occurrences are counted.
+     */
+    public LabelsetStatisticsPortObjectSpec(final String[] labels,
+            final boolean approximate, final int precision,
+            final int capacity, final boolean cooccurrence) {
+        m_labels = labels;
+        m_approximate = approximate;
+        m_precision = approximate ? precision : 0;
+        m_capacity = approximate ? capacity : 0;
+        m_cooccurrence = cooccurrence;
+    }
+
+    /**
+     * @return the names of the labels.
+     */
+    public String[] getLabels() {
+        return m_labels;
+    }
+
+    /**
+     * @return true if the label sets are estimated with sketches.
+     */
+    public boolean isApproximate() {
+        return m_approximate;
+    }
+
+    /**
+     * @return the precision of the distinct label set sketch, 0 in exact
+     *         mode.
+     */
+    public int getPrecision() {
+        return m_precision;
+    }
+
+    /**
+     * @return the capacity of the frequent label set sketch, 0 in exact
+     *         mode.
+     */
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * @return true if the label co-occurrences are counted.
+     */
+    public boolean hasCooccurrence() {
+        return m_cooccurrence;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof LabelsetStatisticsPortObjectSpec)) {
+            return false;
+        }
+        LabelsetStatisticsPortObjectSpec other =
+                (LabelsetStatisticsPortObjectSpec)obj;
+        return m_approximate == other.m_approximate
+                && m_precision == other.m_precision
+                && m_capacity == other.m_capacity
+                && m_cooccurrence == other.m_cooccurrence
+                && Arrays.equals(m_labels, other.m_labels);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int h = Arrays.hashCode(m_labels);
+        h = 31 * h + m_precision;
+        h = 31 * h + m_capacity;
+        return h ^ (m_approximate ? 1 : 0) ^ (m_cooccurrence ? 2 : 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JComponent[] getViews() {
+        return new JComponent[]{};
+    }
+}
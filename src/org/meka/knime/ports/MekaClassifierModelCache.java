@@ -0,0 +1,157 @@
+package org.meka.knime.ports;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import meka.classifiers.multilabel.MultiLabelClassifier;
+
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+import org.meka.knime.utils.BlockScorer;
+import org.meka.knime.utils.BlockScorers;
+import org.meka.knime.utils.DatasetProfile;
+import org.meka.knime.utils.LinearBlockScorer;
+import org.meka.knime.utils.ThresholdCalibrator;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+/**
+ * The values a {@link MekaClassifierModelPortObject} derives from its
+ * classifier and training instances on first use: the summary of the
+ * training instances, the block scorer and the calibrated label thresholds.
+ * Kept apart from the port object, which does not change once created.
+ *
+ * @author Fernando Benites
+ */
+final class MekaClassifierModelCache {
+
+    private static final NodeLogger LOGGER = NodeLogger
+            .getLogger(MekaClassifierModelCache.class);
+
+    /* The classifier. */
+    private final MultiLabelClassifier m_classifier;
+
+    /* The training instances, the class index is the number of labels. */
+    private final Instances m_trainingInstances;
+
+    /* Summary of the training instances, computed on request */
+    private DatasetProfile m_profile;
+
+    /* Scorer of the classifier, created on first use, not saved */
+    private BlockScorer m_scorer;
+
+    /* Scorer without the weights of a linear model, if requested first */
+    private BlockScorer m_plainScorer;
+
+    /* Thresholds calibrated on the training data, per strategy */
+    private final Map<String, double[]> m_thresholds;
+
+    /* Calibrator over the predictions of the training data, created with
+     * the first calibrated strategy, guarded by m_thresholds */
+    private ThresholdCalibrator m_calibrator;
+
+    /**
+     * @param classifier the classifier.
+     * @param trainingInstances the training instances, the class index set.
+     * @param profile the summary of the training instances, null to compute
+     *            it on request.
+     * @param thresholds the saved thresholds per strategy, may be empty.
+     */
+    MekaClassifierModelCache(final Classifier classifier,
+            final Instances trainingInstances, final DatasetProfile profile,
+            final Map<String, double[]> thresholds) {
+        m_classifier = (MultiLabelClassifier)classifier;
+        m_trainingInstances = trainingInstances;
+        m_profile = profile;
+        m_thresholds = new HashMap<String, double[]>(thresholds);
+    }
+
+    /**
+     * @return the summary of the training instances.
+     */
+    synchronized DatasetProfile getProfile() {
+        if (m_profile == null) {
+            m_profile = new DatasetProfile(m_trainingInstances);
+        }
+        return m_profile;
+    }
+
+    /**
+     * @param compile true to read the weights of a linear model, false to
+     *            use them only if already read.
+     * @return the block scorer, see
+     *         {@link MekaClassifierModelPortObject#getBlockScorer()}.
+     */
+    synchronized BlockScorer getBlockScorer(final boolean compile) {
+        if (m_scorer == null && !compile) {
+            if (m_plainScorer == null) {
+                m_plainScorer = BlockScorers.create(m_classifier);
+            }
+            return m_plainScorer;
+        }
+        if (m_scorer == null) {
+            try {
+                m_scorer = LinearBlockScorer.compile(m_classifier,
+                        m_trainingInstances);
+            } catch (Exception e) {
+                LOGGER.debug("Could not read the weights of "
+                        + m_classifier.getClass().getSimpleName(), e);
+            }
+            if (m_scorer == null) {
+                m_scorer = BlockScorers.create(m_classifier);
+            } else {
+                LOGGER.debug("Scoring "
+                        + m_classifier.getClass().getSimpleName()
+                        + " with a weight matrix");
+            }
+        }
+        return m_scorer;
+    }
+
+    /**
+     * @param strategy the threshold strategy.
+     * @param exec to report progress and check for cancellation.
+     * @return the thresholds of the strategy, calibrated on first use.
+     * @throws Exception if the classifier fails or the execution is canceled.
+     * @throws IllegalArgumentException if the strategy is unknown.
+     */
+    double[] getThresholds(final String strategy, final ExecutionMonitor exec)
+            throws Exception {
+        synchronized (m_thresholds) {
+            double[] thresholds = m_thresholds.get(strategy);
+            if (thresholds == null) {
+                thresholds = getCalibrator(exec).getThresholds(strategy,
+                        m_trainingInstances);
+                m_thresholds.put(strategy, thresholds);
+            }
+            return thresholds;
+        }
+    }
+
+    /**
+     * @return a copy of the thresholds calibrated so far, per strategy.
+     */
+    Map<String, double[]> getThresholds() {
+        synchronized (m_thresholds) {
+            return new HashMap<String, double[]>(m_thresholds);
+        }
+    }
+
+    /*
+     * The calibrator over the predictions of the training instances, which
+     * are predicted once and kept for the other strategies; called with the
+     * lock on the thresholds.
+     */
+    private ThresholdCalibrator getCalibrator(final ExecutionMonitor exec)
+            throws Exception {
+        if (m_calibrator == null) {
+            m_calibrator = new ThresholdCalibrator(
+                    ThresholdCalibrator.predict(m_classifier,
+                            m_trainingInstances, exec),
+                    m_trainingInstances.classIndex(),
+                    Runtime.getRuntime().availableProcessors());
+        }
+        return m_calibrator;
+    }
+}
@@ -31,6 +31,8 @@ package org.meka.knime.ports;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 
 import javax.swing.JComponent;
@@ -56,6 +58,15 @@ import org.knime.core.node.port.PortObjectZipOutputStream;
 import org.knime.core.node.port.PortType;
 import org.meka.knime.ports.MekaClassifierModelPortObject;
 import org.meka.knime.ports.MekaClassifierModelPortObjectSpec;
+import org.meka.knime.scoring.MekaScoringModel;
+import org.meka.knime.scoring.MekaScoringModelReader;
+import org.meka.knime.utils.BlockScorer;
+import org.meka.knime.utils.BlockScorers;
+import org.meka.knime.utils.DatasetProfile;
+import org.meka.knime.utils.LinearBlockScorer;
+import org.meka.knime.utils.ThresholdCalibrator;
+
+import meka.classifiers.multilabel.MultiLabelClassifier;
 
 import weka.classifiers.Classifier;
 import weka.core.Instances;
@@ -87,6 +98,11 @@ public class MekaClassifierModelPortObject implements PortObject {
      */
     private static final String MAPPER_KEY = "mapper";
 
+    /*
+     * Threshold info identifier, one double array per threshold strategy.
+     */
+    private static final String THRESHOLDS_INFO = "thresholds";
+
     /**
      * @return Serializer for the {@link MekaClassifierModelPortObject}
      */
@@ -157,7 +173,20 @@ public class MekaClassifierModelPortObject implements PortObject {
         m_mapper.save(mapperconf);
         try {
             out.putNextEntry(new ZipEntry("mapper.xmlout"));
-            model.saveToXML(out);
+            model.saveToXML(new NonClosableOutputStream.Zip(out));
+        } catch (IOException ioe) {
+            LOGGER.error("Internal error: Could not save settings", ioe);
+        }
+
+        // save calibrated thresholds, older ports end after the mapper
+        ModelContent thresholds = new ModelContent(THRESHOLDS_INFO);
+        for (Map.Entry<String, double[]> e
+                : m_cache.getThresholds().entrySet()) {
+            thresholds.addDoubleArray(e.getKey(), e.getValue());
+        }
+        try {
+            out.putNextEntry(new ZipEntry("thresholds.xmlout"));
+            thresholds.saveToXML(new NonClosableOutputStream.Zip(out));
         } catch (IOException ioe) {
             LOGGER.error("Internal error: Could not save settings", ioe);
         }
@@ -215,10 +244,23 @@ public class MekaClassifierModelPortObject implements PortObject {
             // load meta info
             ZipEntry zentry = in.getNextEntry();
             assert zentry.getName().equals("mapper.xmlout");
-            model = ModelContent.loadFromXML(in);
+            model = ModelContent.loadFromXML(new NonClosableInputStream.Zip(in));
         } catch (IOException ioe) {
             LOGGER.error("Internal error: Could not load settings", ioe);
         }
+
+        ModelContentRO thresholds = null;
+        try {
+            // load calibrated thresholds, if saved
+            ZipEntry zentry = in.getNextEntry();
+            if (zentry != null) {
+                assert zentry.getName().equals("thresholds.xmlout");
+                thresholds = ModelContent.loadFromXML(
+                        new NonClosableInputStream.Zip(in));
+            }
+        } catch (IOException ioe) {
+            LOGGER.debug("Could not load calibrated thresholds", ioe);
+        }
         assert (classifier != null);
         assert (trainInstances != null);
         assert (model != null);
@@ -229,17 +271,31 @@ public class MekaClassifierModelPortObject implements PortObject {
         } catch (InvalidSettingsException ise) {
             LOGGER.error("Internal error: Could not load settings", ise);
         }
+        Map<String, double[]> calibrated = new HashMap<String, double[]>();
+        if (thresholds != null) {
+            for (String strategy : thresholds.keySet()) {
+                try {
+                    calibrated.put(strategy,
+                            thresholds.getDoubleArray(strategy));
+                } catch (InvalidSettingsException ise) {
+                    LOGGER.debug("Could not load thresholds " + strategy, ise);
+                }
+            }
+        }
         return new MekaClassifierModelPortObject(classifier, trainInstances,
-                mapper, spec);
+                mapper, spec, null, calibrated);
     }
 
-    private Classifier m_classifier;
+    private final Classifier m_classifier;
+
+    private final Instances m_trainingInstances;
 
-    private Instances m_trainingInstances;
+    private final DataCellStringMapper m_mapper;
 
-    private DataCellStringMapper m_mapper;
+    private final MekaClassifierModelPortObjectSpec m_modelspec;
 
-    private MekaClassifierModelPortObjectSpec m_modelspec;
+    /* Profile, scorer and thresholds, derived on first use */
+    private final MekaClassifierModelCache m_cache;
 
     /**
      * The MekaClassifierPortObject holds information about the used classifier,
@@ -254,10 +310,40 @@ public class MekaClassifierModelPortObject implements PortObject {
             final Instances traininginstances,
             final DataCellStringMapper mapper,
             final MekaClassifierModelPortObjectSpec out) {
+        this(classifier, traininginstances, mapper, out, null);
+    }
+
+    /**
+     * @param classifier Classifier from weka.
+     * @param traininginstances training instances used.
+     * @param mapper mapping DataCells to Strings.
+     * @param out the {@link MekaClassifierModelPortObjectSpec}.
+     * @param profile the summary of the training instances, if already
+     *            created while converting the training data, or null.
+     */
+    public MekaClassifierModelPortObject(final Classifier classifier,
+            final Instances traininginstances,
+            final DataCellStringMapper mapper,
+            final MekaClassifierModelPortObjectSpec out,
+            final DatasetProfile profile) {
+        this(classifier, traininginstances, mapper, out, profile,
+                new HashMap<String, double[]>());
+    }
+
+    private MekaClassifierModelPortObject(final Classifier classifier,
+            final Instances traininginstances,
+            final DataCellStringMapper mapper,
+            final MekaClassifierModelPortObjectSpec out,
+            final DatasetProfile profile,
+            final Map<String, double[]> thresholds) {
         m_classifier = classifier;
         m_trainingInstances = traininginstances;
         m_mapper = mapper;
         m_modelspec = out;
+        // the labels come first, set once for all users of the instances
+        m_trainingInstances.setClassIndex(out.getClassCols().size());
+        m_cache = new MekaClassifierModelCache(classifier,
+                traininginstances, profile, thresholds);
     }
 
     /**
@@ -295,6 +381,72 @@ public class MekaClassifierModelPortObject implements PortObject {
         return m_trainingInstances;
     }
 
+    /**
+     * @return the summary of the training instances, computed on first use
+     *         and kept with the port.
+     */
+    public DatasetProfile getProfile() {
+        return m_cache.getProfile();
+    }
+
+    /**
+     * Returns the block scorer of the classifier. BR models over logistic
+     * regressions are scored with one matrix product per block, their
+     * weights read on first use, see {@link LinearBlockScorer}; all others
+     * are scored by {@link BlockScorers#create(MultiLabelClassifier)}.
+     *
+     * @return the scorer, thread safe.
+     */
+    public BlockScorer getBlockScorer() {
+        return m_cache.getBlockScorer(true);
+    }
+
+    /**
+     * Returns the block scorer of the classifier without reading the weights
+     * of a linear model: the scorer of {@link #getBlockScorer()} if it was
+     * already created, otherwise the scorer of
+     * {@link BlockScorers#create(MultiLabelClassifier)}.
+     *
+     * @return the scorer, thread safe.
+     */
+    public BlockScorer getCreatedBlockScorer() {
+        return m_cache.getBlockScorer(false);
+    }
+
+    /**
+     * Returns the label thresholds of a strategy, calibrated on the
+     * predictions of the training instances. The training instances are
+     * predicted once, on first use, and the thresholds of all strategies are
+     * calibrated from these predictions and kept (and saved) with the port.
+     *
+     * @param strategy {@link ThresholdCalibrator#PCUT1},
+     *            {@link ThresholdCalibrator#PCUTL} or
+     *            {@link ThresholdCalibrator#F1}.
+     * @param exec to report progress and check for cancellation.
+     * @return one threshold per label, must not be modified.
+     * @throws Exception if the classifier fails or the execution is canceled.
+     */
+    public double[] getThresholds(final String strategy,
+            final ExecutionMonitor exec) throws Exception {
+        return m_cache.getThresholds(strategy, exec);
+    }
+
+    /**
+     * Creates the model scoring rows outside of KNIME, with the training
+     * header instead of the training instances.
+     *
+     * @param exec to report progress of the threshold calibration.
+     * @return the scoring model, with the PCut1 thresholds.
+     * @throws Exception if the classifier fails or the execution is canceled.
+     */
+    public MekaScoringModel createScoringModel(final ExecutionMonitor exec)
+            throws Exception {
+        double[] thresholds = getThresholds(ThresholdCalibrator.PCUT1, exec);
+        return MekaScoringModelReader.create(
+                (MultiLabelClassifier)m_classifier, m_trainingInstances,
+                m_mapper, thresholds);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -308,6 +460,12 @@ public class MekaClassifierModelPortObject implements PortObject {
         classifierInfoPanel.add(field);
         JComponent comp = new JScrollPane(classifierInfoPanel);
         comp.setName("Weka Outport");
-        return new JComponent[]{comp};
+        JPanel profilePanel = new JPanel();
+        JTextArea profile = new JTextArea(getProfile().toString());
+        profile.setEditable(false);
+        profilePanel.add(profile);
+        JComponent profileComp = new JScrollPane(profilePanel);
+        profileComp.setName("Training data");
+        return new JComponent[]{comp, profileComp};
     }
 }
@@ -0,0 +1,26 @@
+package org.meka.knime.predictor;
+
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.meka.knime.utils.PredictionCellFactory;
+
+/**
+ * NodeDialog for the multi model predictor, the output options of the
+ * {@link MekaPredictorNodeDialog}, applied to every model.
+ *
+ * @author Fernando Benites
+ */
+public class MekaMultiPredictorNodeDialog extends DefaultNodeSettingsPane {
+
+    /**
+     * Constructor.
+     */
+    MekaMultiPredictorNodeDialog() {
+        this.addDialogComponent(new DialogComponentStringSelection(
+                MekaPredictorNodeModel.createOutputModel(), "Output:",
+                PredictionCellFactory.MODES));
+        this.addDialogComponent(new DialogComponentNumber(
+                MekaPredictorNodeModel.createTopKModel(), "Top k labels:", 1));
+    }
+}
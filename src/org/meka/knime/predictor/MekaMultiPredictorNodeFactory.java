@@ -0,0 +1,58 @@
+package org.meka.knime.predictor;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "MekaMultiPredictor" Node.
+ *
+ *
+ * @author Fernando Benites
+ */
+public class MekaMultiPredictorNodeFactory
+        extends NodeFactory<MekaMultiPredictorNodeModel> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MekaMultiPredictorNodeModel createNodeModel() {
+        return new MekaMultiPredictorNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<MekaMultiPredictorNodeModel> createNodeView(
+            final int viewIndex,
+            final MekaMultiPredictorNodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new MekaMultiPredictorNodeDialog();
+    }
+
+}
@@ -0,0 +1,464 @@
+package org.meka.knime.predictor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import meka.classifiers.multilabel.MultiLabelClassifier;
+
+import org.knime.base.data.util.DataCellStringMapper;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.meka.knime.ports.MekaClassifierModelPortObject;
+import org.meka.knime.ports.MekaClassifierModelPortObjectSpec;
+import org.meka.knime.utils.BlockScorer;
+import org.meka.knime.utils.InstanceBlock;
+import org.meka.knime.utils.MekaConverter;
+import org.meka.knime.utils.PredictionCellFactory;
+import org.meka.knime.utils.ThresholdCalibrator;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * This is the model implementation of the multi model predictor. It scores
+ * the table at its first port with every Meka model connected to the other
+ * ports and appends the predictions of all models to one table, the columns
+ * of model i suffixed by "(Model i)". Models trained on the same columns
+ * share the conversion: every row is converted once and copied to the
+ * models. The models are scored in parallel, a model connected to several
+ * ports is scored once.
+ *
+ * @author Fernando Benites
+ */
+public class MekaMultiPredictorNodeModel extends NodeModel {
+
+    private static final NodeLogger LOGGER = NodeLogger
+            .getLogger(MekaMultiPredictorNodeModel.class);
+
+    /** Number of model ports, the first one connected. */
+    static final int NR_MODEL_PORTS = 4;
+
+    /* A model port which may be left unconnected. */
+    private static final PortType OPTIONAL_MODEL_TYPE =
+            new PortType(MekaClassifierModelPortObject.class, true);
+
+    /* The output mode, one of PredictionCellFactory.MODES. */
+    private final SettingsModelString m_output =
+            MekaPredictorNodeModel.createOutputModel();
+
+    /* Number of labels in top k mode. */
+    private final SettingsModelIntegerBounded m_topK =
+            MekaPredictorNodeModel.createTopKModel();
+
+    /**
+     * Constructor.
+     */
+    public MekaMultiPredictorNodeModel() {
+        super(createInPorts(), new PortType[]{BufferedDataTable.TYPE});
+    }
+
+    private static PortType[] createInPorts() {
+        PortType[] ports = new PortType[NR_MODEL_PORTS + 1];
+        ports[0] = BufferedDataTable.TYPE;
+        ports[1] = MekaClassifierModelPortObject.TYPE;
+        for (int p = 2; p < ports.length; p++) {
+            ports[p] = OPTIONAL_MODEL_TYPE;
+        }
+        return ports;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
+            throws InvalidSettingsException {
+        DataTableSpec testspec = (DataTableSpec)inSpecs[0];
+        List<DataColumnSpec> columns = new ArrayList<DataColumnSpec>();
+        for (int p = 1; p < inSpecs.length; p++) {
+            MekaClassifierModelPortObjectSpec spec =
+                    (MekaClassifierModelPortObjectSpec)inSpecs[p];
+            if (spec == null) {
+                continue;
+            }
+            if (testspec != null) {
+                MekaConverter.bindColumns(spec.getSpec(), testspec,
+                        spec.getClassCols().size());
+            }
+            appendColumns(columns, createCellFactory(spec.getClassCols()), p);
+        }
+        return new DataTableSpec[]{
+                new DataTableSpec(columns.toArray(new DataColumnSpec[0]))};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObject[] execute(final PortObject[] inData,
+            final ExecutionContext exec) throws Exception {
+        BufferedDataTable testdata = (BufferedDataTable)inData[0];
+        DataTableSpec testspec = testdata.getDataTableSpec();
+        List<Conversion> conversions = new ArrayList<Conversion>();
+        List<Model> models = new ArrayList<Model>();
+        // the models connected to several ports are scored once
+        Map<MultiLabelClassifier, Model> scored =
+                new IdentityHashMap<MultiLabelClassifier, Model>();
+        List<DataColumnSpec> columns = new ArrayList<DataColumnSpec>();
+        for (int p = 1; p < inData.length; p++) {
+            MekaClassifierModelPortObject port =
+                    (MekaClassifierModelPortObject)inData[p];
+            if (port == null) {
+                continue;
+            }
+            List<String> labels = port.getSpec().getClassCols();
+            Instances header = new Instances(port.getTrainingInstances(), 0);
+            header.setClassIndex(labels.size());
+            Conversion conversion = null;
+            for (Conversion c : conversions) {
+                if (c.converts(port, header)) {
+                    conversion = c;
+                    break;
+                }
+            }
+            if (conversion == null) {
+                conversion = new Conversion(port, header, MekaConverter
+                        .bindColumns(port.getSpec().getSpec(), testspec,
+                                labels.size()));
+                conversions.add(conversion);
+            }
+            PredictionCellFactory cellFactory = createCellFactory(labels);
+            double[] thresholds = cellFactory.needsThresholds()
+                    ? port.getThresholds(ThresholdCalibrator.PCUT1,
+                            exec.createSubProgress(0)) : null;
+            Model model = new Model(conversion, cellFactory, thresholds);
+            Model same = scored.get((MultiLabelClassifier)port
+                    .getClassifier());
+            if (same == null) {
+                // the weights of a linear model are only used if a predictor
+                // already read them, this node never reads them
+                model.m_scorer = port.getCreatedBlockScorer();
+                scored.put((MultiLabelClassifier)port.getClassifier(),
+                        model);
+                conversion.m_nrScorers++;
+            } else {
+                model.m_same = same;
+            }
+            models.add(model);
+            appendColumns(columns, cellFactory, p);
+        }
+        for (Model model : models) {
+            // the only model of a conversion scores the converted rows,
+            // the others get copies the model may change
+            model.m_block = model.m_scorer == null ? null
+                    : model.m_conversion.m_nrScorers == 1
+                    ? model.m_conversion.m_block
+                    : new InstanceBlock(model.m_conversion.m_header,
+                            InstanceBlock.DEFAULT_CAPACITY);
+        }
+        LOGGER.debug(models.size() + " models, " + scored.size()
+                + " distinct, " + conversions.size() + " conversions");
+
+        BufferedDataContainer buf = exec.createDataContainer(
+                new DataTableSpec(columns.toArray(new DataColumnSpec[0])));
+        ExecutorService pool = scored.size() > 1
+                ? Executors.newFixedThreadPool(scored.size() - 1) : null;
+        try {
+            double nrRows = Math.max(1, testdata.getRowCount());
+            long j = 0;
+            InstanceBlock first = conversions.get(0).m_block;
+            for (DataRow testrow : testdata) {
+                for (Conversion conversion : conversions) {
+                    conversion.m_block.add(testrow, conversion.m_mapper,
+                            conversion.m_order, false);
+                }
+                j++;
+                if (first.isFull()) {
+                    writeBlock(conversions, models, pool, buf);
+                    exec.setProgress(j / nrRows, "Predicting row " + j);
+                    exec.checkCanceled();
+                }
+            }
+            writeBlock(conversions, models, pool, buf);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        buf.close();
+        return new PortObject[]{buf.getTable()};
+    }
+
+    /*
+     * Scores the converted rows with every model, in parallel if there are
+     * several, and writes the predictions of all models as one row each. The
+     * blocks are cleared.
+     */
+    private static void writeBlock(final List<Conversion> conversions,
+            final List<Model> models, final ExecutorService pool,
+            final BufferedDataContainer buf) throws Exception {
+        InstanceBlock first = conversions.get(0).m_block;
+        if (first.size() == 0) {
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        Model local = null;
+        for (final Model model : models) {
+            if (model.m_scorer == null) {
+                continue;
+            } else if (local == null) {
+                // scored by this thread
+                local = model;
+            } else {
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        model.score();
+                        return null;
+                    }
+                }));
+            }
+        }
+        try {
+            local.score();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            throw cause instanceof Exception ? (Exception)cause
+                    : new RuntimeException(cause);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        List<DataCell> cells = new ArrayList<DataCell>();
+        for (int r = 0; r < first.size(); r++) {
+            cells.clear();
+            for (Model model : models) {
+                double[][] scores = model.m_same == null ? model.m_scores
+                        : model.m_same.m_scores;
+                for (DataCell cell : model.m_cellFactory.createCells(
+                        scores[r], model.m_thresholds)) {
+                    cells.add(cell);
+                }
+            }
+            buf.addRowToTable(new DefaultRow(first.getKey(r),
+                    cells.toArray(new DataCell[cells.size()])));
+        }
+        for (Conversion conversion : conversions) {
+            conversion.m_block.clear();
+        }
+    }
+
+    private PredictionCellFactory createCellFactory(
+            final List<String> labels) {
+        return new PredictionCellFactory(m_output.getStringValue(), labels,
+                false, m_topK.getIntValue());
+    }
+
+    /*
+     * Appends the columns of the cell factory, suffixed by the model port.
+     */
+    private static void appendColumns(final List<DataColumnSpec> columns,
+            final PredictionCellFactory cellFactory, final int port) {
+        for (DataColumnSpec column : cellFactory.createSpec()) {
+            DataColumnSpecCreator creator = new DataColumnSpecCreator(column);
+            creator.setName(column.getName() + " (Model " + port + ")");
+            columns.add(creator.createSpec());
+        }
+    }
+
+    /*
+     * The conversion of the rows for the models trained on the same columns
+     * with the same nominal values.
+     */
+    private static final class Conversion {
+
+        private final DataTableSpec m_trainingspec;
+
+        private final Instances m_header;
+
+        private final DataCellStringMapper m_mapper;
+
+        private final int[] m_order;
+
+        /* The converted rows of the current block. */
+        private final InstanceBlock m_block;
+
+        /* Number of models scoring the rows. */
+        private int m_nrScorers;
+
+        Conversion(final MekaClassifierModelPortObject port,
+                final Instances header, final int[] order) {
+            m_trainingspec = port.getSpec().getSpec();
+            m_header = header;
+            m_mapper = port.getMapper();
+            m_order = order;
+            m_block = new InstanceBlock(header, InstanceBlock.DEFAULT_CAPACITY);
+        }
+
+        /*
+         * True if the rows of the model are converted the same way: same
+         * columns and attributes, and the nominal values mapped to the same
+         * strings.
+         */
+        boolean converts(final MekaClassifierModelPortObject port,
+                final Instances header) {
+            if (!m_trainingspec.equals(port.getSpec().getSpec())
+                    || m_header.classIndex() != header.classIndex()
+                    || !m_header.equalHeaders(header)) {
+                return false;
+            }
+            DataCellStringMapper mapper = port.getMapper();
+            if (mapper == m_mapper) {
+                return true;
+            }
+            for (int a = 0; a < header.numAttributes(); a++) {
+                Attribute attribute = header.attribute(a);
+                if (!attribute.isNominal() && !attribute.isString()) {
+                    continue;
+                }
+                for (int v = 0; v < attribute.numValues(); v++) {
+                    String value = attribute.value(v);
+                    String orig = m_mapper.stringToOrigString(value);
+                    if (orig == null ? mapper.stringToOrigString(value) != null
+                            : !orig.equals(mapper.stringToOrigString(value))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /*
+     * A model port: its scorer (null if the classifier is scored for another
+     * port) and the cells it writes.
+     */
+    private static final class Model {
+
+        private final Conversion m_conversion;
+
+        private final PredictionCellFactory m_cellFactory;
+
+        private final double[] m_thresholds;
+
+        private BlockScorer m_scorer;
+
+        /* The model scoring the same classifier, if not scored itself. */
+        private Model m_same;
+
+        /* The rows scored, the converted rows or a copy. */
+        private InstanceBlock m_block;
+
+        /* The scores of the current block. */
+        private double[][] m_scores;
+
+        Model(final Conversion conversion,
+                final PredictionCellFactory cellFactory,
+                final double[] thresholds) {
+            m_conversion = conversion;
+            m_cellFactory = cellFactory;
+            m_thresholds = thresholds;
+        }
+
+        void score() throws Exception {
+            InstanceBlock converted = m_conversion.m_block;
+            if (m_block != converted) {
+                m_block.clear();
+                for (int r = 0; r < converted.size(); r++) {
+                    m_block.add(converted, r);
+                }
+            }
+            m_scores = m_scorer.score(m_block);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadInternals(final File nodeInternDir,
+            final ExecutionMonitor exec) throws IOException,
+            CanceledExecutionException {
+        // nothing to do
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveInternals(final File nodeInternDir,
+            final ExecutionMonitor exec) throws IOException,
+            CanceledExecutionException {
+        // nothing to do
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveSettingsTo(final NodeSettingsWO settings) {
+        m_output.saveSettingsTo(settings);
+        m_topK.saveSettingsTo(settings);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void validateSettings(final NodeSettingsRO settings)
+            throws InvalidSettingsException {
+        m_output.validateSettings(settings);
+        m_topK.validateSettings(settings);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadValidatedSettingsFrom(final NodeSettingsRO settings)
+            throws InvalidSettingsException {
+        m_output.loadSettingsFrom(settings);
+        m_topK.loadSettingsFrom(settings);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void reset() {
+        // nothing to do
+    }
+}
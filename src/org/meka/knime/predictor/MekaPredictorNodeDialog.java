@@ -30,7 +30,10 @@ package org.meka.knime.predictor;
 
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.meka.knime.utils.PredictionCellFactory;
 
 /**
  * NodeDialog for the Weka Predictor Node.
@@ -47,5 +50,16 @@ public class MekaPredictorNodeDialog extends DefaultNodeSettingsPane {
                 new SettingsModelBoolean(MekaPredictorNodeModel.WINNERCOL_KEY,
                         true),
                 "(If class attribute is nominal:) Append Winner Value"));
+        this.addDialogComponent(new DialogComponentStringSelection(
+                MekaPredictorNodeModel.createOutputModel(), "Output:",
+                PredictionCellFactory.MODES));
+        this.addDialogComponent(new DialogComponentNumber(
+                MekaPredictorNodeModel.createTopKModel(), "Top k labels:", 1));
+        this.addDialogComponent(new DialogComponentNumber(
+                MekaPredictorNodeModel.createCacheSizeModel(),
+                "Prediction cache (rows, 0 = off):", 1000));
+        this.addDialogComponent(new DialogComponentBoolean(
+                MekaPredictorNodeModel.createPipelinedModel(),
+                "Pipelined (read, predict and write in parallel)"));
     }
 }
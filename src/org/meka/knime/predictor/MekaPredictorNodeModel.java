@@ -36,12 +36,10 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.List;
 import java.util.Set;
-import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
-import meka.classifiers.multilabel.Evaluation;
 import meka.classifiers.multilabel.MultiLabelClassifier;
-import meka.core.MLEvalUtils;
-import meka.core.Result;
 
 import org.knime.base.data.util.DataCellStringMapper;
 import org.knime.core.data.DataCell;
@@ -51,7 +49,6 @@ import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
 import org.knime.core.data.container.CellFactory;
-import org.knime.core.data.container.ColumnRearranger;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
 import org.knime.core.node.BufferedDataTable;
@@ -66,15 +63,25 @@ import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelFilterString;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 import org.meka.knime.ports.MekaClassifierModelPortObject;
-import org.meka.knime.ports.MekaClassifierModelPortObjectSpec;
+import org.meka.knime.utils.BlockScorer;
+import org.meka.knime.utils.DatasetProfile;
+import org.meka.knime.utils.InstanceBlock;
 import org.meka.knime.utils.MekaConverter;
+import org.meka.knime.utils.ModelRegistry;
+import org.meka.knime.utils.PredictionCache;
+import org.meka.knime.utils.PredictionCellFactory;
+import org.meka.knime.utils.StreamingEvaluation;
+import org.meka.knime.utils.ThresholdCalibrator;
 
 //import weka.classifiers.Classifier;
 //import weka.classifiers.Evaluation;
+import weka.core.Instance;
 import weka.core.Instances;
 
 /**
@@ -105,6 +112,16 @@ public class MekaPredictorNodeModel extends NodeModel {
      */
     private String m_eval = "";
 
+    /*
+     * The evaluation of the last execution, rendered lazily into m_eval.
+     */
+    private StreamingEvaluation m_evaluation;
+
+    /*
+     * The threshold of the last execution, heading the evaluation text.
+     */
+    private String m_evalHeader = "";
+
     /*
      * Meka-Classifier used for classification.
      */
@@ -115,12 +132,53 @@ public class MekaPredictorNodeModel extends NodeModel {
      */
     private Instances m_trainingInstances;
 
+    /** Settings key of the output mode. */
+    static final String OUTPUT_KEY = "Output";
+
+    /** Settings key of the number of labels in top k mode. */
+    static final String TOPK_KEY = "TopK";
+
+    /** Default number of labels in top k mode. */
+    static final int DEFAULT_TOPK = 10;
+
+    /** Settings key of the number of rows in the prediction cache. */
+    static final String CACHE_KEY = "CacheSize";
+
+    /** Settings key of the pipelined execution. */
+    static final String PIPELINED_KEY = "Pipelined";
+
+    /* Number of blocks in flight in pipelined execution. */
+    private static final int PIPELINE_BLOCKS = 4;
+
+    /*
+     * How the label scores are written.
+     */
+    private final SettingsModelString m_output = createOutputModel();
+
+    /*
+     * Number of labels in top k mode.
+     */
+    private final SettingsModelIntegerBounded m_topK = createTopKModel();
+
+    /*
+     * Maximal number of cached row predictions, 0 for no cache.
+     */
+    private final SettingsModelIntegerBounded m_cacheSize =
+            createCacheSizeModel();
+
+    /*
+     * True if the rows are converted, scored and written in parallel
+     * stages.
+     */
+    private final SettingsModelBoolean m_pipelined = createPipelinedModel();
+
     /**
      * Constructor.
      */
     public MekaPredictorNodeModel() {
         super(new PortType[]{MekaClassifierModelPortObject.TYPE,
-                BufferedDataTable.TYPE}, new PortType[]{BufferedDataTable.TYPE});
+                BufferedDataTable.TYPE}, new PortType[]{BufferedDataTable.TYPE,
+                BufferedDataTable.TYPE});
     }
 
     /**
@@ -129,7 +187,8 @@ public class MekaPredictorNodeModel extends NodeModel {
     @Override
     protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
             throws InvalidSettingsException {      
-    	return new DataTableSpec[]{null};
+    	return new DataTableSpec[]{null,
+    	        StreamingEvaluation.createMeasuresSpec()};
     }
 
     /**
@@ -139,128 +198,303 @@ public class MekaPredictorNodeModel extends NodeModel {
     protected PortObject[] execute(final PortObject[] inData,
             final ExecutionContext exec) throws Exception {
         BufferedDataTable testdata = (BufferedDataTable)inData[1];
-        
-        //
-        PortObject spec = inData[0];
-        MekaClassifierModelPortObject mekaout = (MekaClassifierModelPortObject) spec;
-        MekaClassifierModelPortObjectSpec out = mekaout.getSpec();
-        DataTableSpec dts = out.getSpec();
-        //
-        
         MekaClassifierModelPortObject model =
                 (MekaClassifierModelPortObject)inData[0];
         DataTableSpec trainingspec = model.getSpec().getSpec();
         isSubSpec(testdata.getDataTableSpec(), trainingspec);
         List<String> classcolname = model.getSpec().getClassCols();
         DataTableSpec testspec = testdata.getDataTableSpec();
-        //Since we have multiple classes names so checking all
-        for(int i = 0; i < classcolname.size(); i ++){
-        	if (testspec.findColumnIndex(classcolname.get(i)) >= 0) {
-                m_doEval = true;
-            } else {
-                m_doEval = false;
-            }
-        }
-               
+        int nrLabels = classcolname.size();
+
+        ModelRegistry.release(m_classifier);
         m_classifier = (MultiLabelClassifier) model.getClassifier();
+        // the class index is set by the port
         m_trainingInstances = model.getTrainingInstances();
-        
-
-        ColumnRearranger colre =
-                new ColumnRearranger(testdata.getDataTableSpec());
-        //Getting column specifications with respect to class column names
-        DataColumnSpec[] classcolspec = new DataColumnSpec[classcolname.size()];
-        for(int i = 0; i < classcolname.size(); i ++){
-        	classcolspec[i] = trainingspec.getColumnSpec(classcolname.get(i));
-        }        		
-        
-
-        Vector<Integer> posVec = new Vector<Integer>();
-        for (int i = 0; i < trainingspec.getNumColumns(); i++) {
-            DataColumnSpec colspec = trainingspec.getColumnSpec(i);
-            if (!m_doEval && colspec.equalStructure(classcolspec[i])) {
-                // do not add
-            } else {
-                int position = testspec.findColumnIndex(colspec.getName());
-                assert (position >= 0);
-                posVec.add(position);
 
+        // the rows are converted directly from the test table, in the column
+        // order of the training data, without a rearranged copy
+        int[] order = MekaConverter.bindColumns(trainingspec, testspec,
+                nrLabels);
+        m_doEval = true;
+        for (int l = 0; l < nrLabels; l++) {
+            m_doEval &= order[l] >= 0;
+        }
+        Instances header = new Instances(m_trainingInstances, 0);
+        DataCellStringMapper mapper = model.getMapper();
+
+        PredictionCellFactory cellFactory = new PredictionCellFactory(
+                m_output.getStringValue(), classcolname, false,
+                m_topK.getIntValue());
+        // PCut1 calibrated on the training data, cached in the model port;
+        // the calibration predicts the training data, so only if needed
+        double[] thresholds = cellFactory.needsThresholds() || m_doEval
+                ? model.getThresholds(ThresholdCalibrator.PCUT1,
+                        exec.createSubProgress(0)) : null;
+        DataTableSpec newspec = cellFactory.createSpec();
+        if (m_doEval && PredictionCellFactory.COLUMNS.equals(
+                m_output.getStringValue())) {
+            // merge class column of training and test table
+            DataColumnSpec[] newcolspecs = new DataColumnSpec[nrLabels];
+            for (int index = 0; index < nrLabels; index++) {
+                DataColumnSpecCreator newclassColumn =
+                        new DataColumnSpecCreator(
+                                testspec.getColumnSpec(order[index]));
+                newclassColumn.merge(trainingspec.getColumnSpec(
+                        classcolname.get(index)));
+                newclassColumn.setType(DoubleCell.TYPE);
+                newcolspecs[index] = newclassColumn.createSpec();
             }
+            newspec = new DataTableSpec(newcolspecs);
+        }
+
+        BufferedDataContainer buf = exec.createDataContainer(newspec);
+
+        // every instance is predicted once and evaluated on the fly, the
+        // predictions are not kept as by Evaluation.testClassifier
+        StreamingEvaluation evaluation = new StreamingEvaluation(nrLabels);
+        // the first rows, summarized only if logged
+        Instances profiled = LOGGER.isDebugEnabled()
+                ? new Instances(header, DatasetProfile.SAMPLE_SIZE) : null;
+        ExecutionMonitor predictExec = exec.createSubProgress(1);
+        double nrRows = Math.max(1, testdata.getRowCount());
+        long j = 0;
+        // the rows are scored in blocks, BR over logistic regressions with
+        // one matrix product, models able to score a block at once do so,
+        // all others row by row
+        BlockScorer scorer = model.getBlockScorer();
+        // repeated rows are scored once if the cache is enabled
+        PredictionCache cache = null;
+        if (m_cacheSize.getIntValue() > 0) {
+            cache = new PredictionCache(scorer, header,
+                    m_cacheSize.getIntValue(), InstanceBlock.DEFAULT_CAPACITY);
+            scorer = cache;
         }
-        int[] positions = new int[posVec.size()];
-        for (int j = 0; j < positions.length; j++) {
-            positions[j] = posVec.get(j);
+        if (m_pipelined.getBooleanValue()) {
+            j = predictPipelined(testdata, header, mapper, order, profiled,
+                    scorer, cellFactory, thresholds, evaluation, buf,
+                    predictExec);
+        } else {
+            InstanceBlock block =
+                    new InstanceBlock(header, InstanceBlock.DEFAULT_CAPACITY);
+            for (DataRow testrow : testdata) {
+                Instance x = block.add(testrow, mapper, order, m_doEval);
+                if (profiled != null && profiled.numInstances()
+                        < DatasetProfile.SAMPLE_SIZE) {
+                    profiled.add(x);
+                }
+                j++;
+                if (block.isFull()) {
+                    writeBlock(block, scorer.score(block), cellFactory,
+                            thresholds, evaluation, buf);
+                    predictExec.setProgress(j / nrRows,
+                            "Predicting row " + j);
+                    predictExec.checkCanceled();
+                }
+            }
+            writeBlock(block, scorer.score(block), cellFactory, thresholds,
+                    evaluation, buf);
         }
-        colre.permute(positions);
-        colre.keepOnly(positions);
-        testdata = exec.createColumnRearrangeTable(testdata, colre, exec);
+        buf.close();
+        if (profiled != null) {
+            new DatasetProfile(profiled).debug(LOGGER);
+        }
+        // the text report is rendered when the view asks for it
+        setEvaluation((thresholds == null ? ""
+                : "Threshold (PCut1): " + thresholds[0] + "\n")
+                + (cache == null ? "" : cache + "\n")
+                + (m_doEval ? "" : "N: " + j + "\n"),
+                m_doEval ? evaluation : null);
+        return new PortObject[]{buf.getTable(),
+                StreamingEvaluation.createMeasuresTable(m_evaluation, exec)};
+    }
 
-        DataCellStringMapper mapper = model.getMapper();
-        Instances testInstances = null;
-        ExecutionMonitor trainingConvert = exec.createSubProgress(.4);
-
-        Result res = null;
-        if (m_doEval) {
-	        // merge class column of training and test table
-	        DataTableSpec oldTestSpec = testdata.getDataTableSpec();
-	        //taking class indexes an array since we have multiple classes
-	        Integer[] classIndex = new Integer[classcolname.size()];	        
-        	
-            MekaConverter mekacon =
-                    new MekaConverter(testdata.getDataTableSpec());
-            testInstances = mekacon.convertToMeka(testdata, trainingConvert);
-            LOGGER.debug(testInstances.toSummaryString());
-            
-            int newClassIndex = out.getClassCols().size();
-            	
-            testInstances.setClassIndex(newClassIndex); //Testing
-            //testInstances.setClassIndex(newClassIndex-1);
-            res=Evaluation.testClassifier(m_classifier, testInstances);
-			res.setInfo("Type","ML");
-            m_eval = res.toString();
-            res.setInfo("Threshold",MLEvalUtils.getThreshold(res.predictions,m_trainingInstances,"PCut1"));  //To be used for new node (Ranking to classes)
-            m_eval = Result.getStats(res, "2").toString();
-            List<double[]> preds=res.predictions;
-            DataColumnSpec[] newcolspecs =
-                    new DataColumnSpec[newClassIndex];
-            for(int index = 0; index < classcolname.size(); index ++){
-            	classIndex[index] = oldTestSpec.findColumnIndex(classcolname.get(index));
-            
-            	DataColumnSpecCreator newclassColumn =
-                    new DataColumnSpecCreator(
-                            oldTestSpec.getColumnSpec(classIndex[index]));
-            newclassColumn.merge(classcolspec[index]);
-            newclassColumn.setType(DoubleCell.TYPE);
-            
-                    newcolspecs[index] = newclassColumn.createSpec();
-                    
+    /*
+     * Converts, scores and writes the rows in three stages connected by
+     * bounded queues: a reader thread converts the rows into blocks, the
+     * calling thread scores them (the classifier is only used by this
+     * thread) and a writer thread evaluates them and writes them to the
+     * container. The blocks are recycled, at most PIPELINE_BLOCKS are in
+     * flight. Returns the number of rows.
+     */
+    private long predictPipelined(final BufferedDataTable testdata,
+            final Instances header, final DataCellStringMapper mapper,
+            final int[] order, final Instances profiled,
+            final BlockScorer scorer, final PredictionCellFactory cellFactory,
+            final double[] thresholds, final StreamingEvaluation evaluation,
+            final BufferedDataContainer buf, final ExecutionMonitor exec)
+            throws Exception {
+        // one more slot than blocks, the end marker never blocks
+        final BlockingQueue<InstanceBlock> free =
+                new ArrayBlockingQueue<InstanceBlock>(PIPELINE_BLOCKS + 1);
+        final BlockingQueue<InstanceBlock> converted =
+                new ArrayBlockingQueue<InstanceBlock>(PIPELINE_BLOCKS + 1);
+        final BlockingQueue<ScoredBlock> scored =
+                new ArrayBlockingQueue<ScoredBlock>(PIPELINE_BLOCKS + 1);
+        for (int b = 0; b < PIPELINE_BLOCKS; b++) {
+            free.add(new InstanceBlock(header,
+                    InstanceBlock.DEFAULT_CAPACITY));
+        }
+        final InstanceBlock end = new InstanceBlock(header, 0);
+        final Throwable[] error = new Throwable[1];
+        final Thread scoring = Thread.currentThread();
+        Thread reader = new Thread("Meka predictor reader") {
+            @Override
+            public void run() {
+                try {
+                    InstanceBlock block = free.take();
+                    for (DataRow testrow : testdata) {
+                        Instance x =
+                                block.add(testrow, mapper, order, m_doEval);
+                        if (profiled != null && profiled.numInstances()
+                                < DatasetProfile.SAMPLE_SIZE) {
+                            profiled.add(x);
+                        }
+                        if (block.isFull()) {
+                            converted.put(block);
+                            block = free.take();
+                        }
+                    }
+                    converted.put(block);
+                    converted.put(end);
+                } catch (InterruptedException ie) {
+                    // aborted by the scoring thread
+                } catch (Throwable th) {
+                    abort(error, th, scoring, converted, scored, end);
+                }
+            }
+        };
+        Thread writer = new Thread("Meka predictor writer") {
+            @Override
+            public void run() {
+                try {
+                    ScoredBlock next = scored.take();
+                    while (next.m_block != end) {
+                        writeBlock(next.m_block, next.m_scores, cellFactory,
+                                thresholds, evaluation, buf);
+                        free.put(next.m_block);
+                        next = scored.take();
+                    }
+                } catch (InterruptedException ie) {
+                    // aborted by the scoring thread
+                } catch (Throwable th) {
+                    abort(error, th, scoring, converted, scored, end);
+                }
+            }
+        };
+        double nrRows = Math.max(1, testdata.getRowCount());
+        long rows = 0;
+        reader.start();
+        writer.start();
+        try {
+            InstanceBlock block = converted.take();
+            while (block != end) {
+                double[][] scores = scorer.score(block);
+                rows += block.size();
+                scored.put(new ScoredBlock(block, scores));
+                exec.setProgress(rows / nrRows, "Predicting row " + rows);
+                exec.checkCanceled();
+                block = converted.take();
+            }
+            // never blocks, if there is no slot left an aborted stage already
+            // queued the end marker
+            scored.offer(new ScoredBlock(end, null));
+            writer.join();
+        } catch (InterruptedException ie) {
+            synchronized (error) {
+                if (error[0] == null) {
+                    // not woken by a failed stage
+                    throw ie;
+                }
+            }
+        } finally {
+            reader.interrupt();
+            writer.interrupt();
+            joinUninterruptibly(reader);
+            joinUninterruptibly(writer);
+            synchronized (error) {
+                if (error[0] != null) {
+                    // the interrupt of an abort after the last wait, not a
+                    // cancellation of the node
+                    Thread.interrupted();
+                }
             }
-            DataTableSpec newspec = new DataTableSpec(newcolspecs);
-
-            BufferedDataContainer buf = exec.createDataContainer(newspec);
-
-            for (int j = 0; j < preds.size(); j++) {
-            	
-            	double[] pred=m_classifier.distributionForInstance(testInstances.get(j));//preds.get(j);
-                DataCell[] cells = new DataCell[pred.length];
-            	//DataCell[] cells = new DataCell[pred.length+1]; //Test to be deleted
-                for (int i=0;i<pred.length;i++){
-                //for (int i=0;i<pred.length+1;i++){
-                	DoubleCell dc=new DoubleCell(pred[i]);
-                	cells[i]=dc;
-                }                	
-                
-                DataRow row = new DefaultRow(
-                "Row" + j, cells);
-                buf.addRowToTable(row);
+        }
+        synchronized (error) {
+            if (error[0] instanceof Exception) {
+                throw (Exception)error[0];
+            } else if (error[0] != null) {
+                throw new RuntimeException(error[0]);
+            }
+        }
+        return rows;
+    }
+
+    /*
+     * Records the first failure of a pipeline stage and wakes the scoring
+     * thread: it is interrupted and, in case the scorer swallows the
+     * interrupt, the end markers are queued for it and the writer. The
+     * queues keep a slot for the end marker; if it is taken, an end marker
+     * is already queued.
+     */
+    private static void abort(final Throwable[] error, final Throwable th,
+            final Thread scoring,
+            final BlockingQueue<InstanceBlock> converted,
+            final BlockingQueue<ScoredBlock> scored, final InstanceBlock end) {
+        synchronized (error) {
+            if (error[0] == null) {
+                error[0] = th;
             }
-            buf.close();
-            BufferedDataTable classified = buf.getTable();
+        }
+        converted.offer(end);
+        scored.offer(new ScoredBlock(end, null));
+        scoring.interrupt();
+    }
+
+    private static void joinUninterruptibly(final Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * A block with the scores of its rows, passed to the writer.
+     */
+    private static final class ScoredBlock {
+
+        private final InstanceBlock m_block;
+
+        private final double[][] m_scores;
 
-            return new PortObject[]{classified};                		
-                
+        ScoredBlock(final InstanceBlock block, final double[][] scores) {
+            m_block = block;
+            m_scores = scores;
         }
-		return null;       
+    }
+
+    /*
+     * Evaluates the scored rows of the block (if the true labels are known)
+     * and writes them to the container. The block is cleared.
+     */
+    private void writeBlock(final InstanceBlock block, final double[][] preds,
+            final PredictionCellFactory cellFactory,
+            final double[] thresholds, final StreamingEvaluation evaluation,
+            final BufferedDataContainer buf) {
+        for (int r = 0; r < preds.length; r++) {
+            if (m_doEval) {
+                evaluation.add(preds[r], block.getTruth(r), thresholds);
+            }
+            DataCell[] cells = cellFactory.createCells(preds[r], thresholds);
+            buf.addRowToTable(new DefaultRow(block.getKey(r), cells));
+        }
+        block.clear();
     }
 
     /**
@@ -274,8 +508,17 @@ public class MekaPredictorNodeModel extends NodeModel {
         ObjectInputStream in = null;
         try {
             in = new ObjectInputStream(new FileInputStream(f));
-            m_classifier = (MultiLabelClassifier)in.readObject();
-            m_eval = in.readUTF();
+            Object classifier = in.readObject();
+            ModelRegistry.release(m_classifier);
+            if (classifier instanceof byte[]) {
+                // shared with the other nodes holding the same model
+                m_classifier = (MultiLabelClassifier)ModelRegistry.acquire(
+                        (byte[])classifier);
+            } else {
+                // written before the registry
+                m_classifier = (MultiLabelClassifier)classifier;
+            }
+            setEvaluation(in.readUTF(), null);
         } catch (ClassNotFoundException e) {
             LOGGER.error("Could not read meka classifier", e);
             IOException ioe = new IOException();
@@ -299,7 +542,19 @@ public class MekaPredictorNodeModel extends NodeModel {
     @Override
     protected void loadValidatedSettingsFrom(final NodeSettingsRO settings)
             throws InvalidSettingsException {
-    	    	
+        // added later, older workflows write one column per label
+        if (settings.containsKey(OUTPUT_KEY)) {
+            m_output.loadSettingsFrom(settings);
+            m_topK.loadSettingsFrom(settings);
+        }
+        // added later, older workflows predict every row
+        if (settings.containsKey(CACHE_KEY)) {
+            m_cacheSize.loadSettingsFrom(settings);
+        }
+        // added later, older workflows predict on one thread
+        if (settings.containsKey(PIPELINED_KEY)) {
+            m_pipelined.loadSettingsFrom(settings);
+        }
     }
 
     /**
@@ -307,7 +562,16 @@ public class MekaPredictorNodeModel extends NodeModel {
      */
     @Override
     protected void reset() {
-        m_eval = "";
+        setEvaluation("", null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDispose() {
+        ModelRegistry.release(m_classifier);
+        m_classifier = null;
     }
 
     /**
@@ -321,8 +585,11 @@ public class MekaPredictorNodeModel extends NodeModel {
         ObjectOutputStream out = null;
         try {
             out = new ObjectOutputStream(new FileOutputStream(f));
-            out.writeObject(m_classifier);
-            out.writeUTF(m_eval);
+            // serialized separately, the bytes identify the model in the
+            // registry when loaded
+            out.writeObject(m_classifier == null ? null
+                    : ModelRegistry.serialize(m_classifier));
+            out.writeUTF(getEvaluation());
             exec.setProgress(.5);
             exec.checkCanceled();
         } catch (IOException ioe) {
@@ -341,6 +608,10 @@ public class MekaPredictorNodeModel extends NodeModel {
     @Override
     protected void saveSettingsTo(final NodeSettingsWO settings) {
         //m_winnercol.saveSettingsTo(settings);
+        m_output.saveSettingsTo(settings);
+        m_topK.saveSettingsTo(settings);
+        m_cacheSize.saveSettingsTo(settings);
+        m_pipelined.saveSettingsTo(settings);
     }
 
     /**
@@ -349,6 +620,47 @@ public class MekaPredictorNodeModel extends NodeModel {
     @Override
     protected void validateSettings(final NodeSettingsRO settings)
             throws InvalidSettingsException {
+        if (settings.containsKey(OUTPUT_KEY)) {
+            m_output.validateSettings(settings);
+            m_topK.validateSettings(settings);
+        }
+        if (settings.containsKey(CACHE_KEY)) {
+            m_cacheSize.validateSettings(settings);
+        }
+        if (settings.containsKey(PIPELINED_KEY)) {
+            m_pipelined.validateSettings(settings);
+        }
+    }
+
+    /**
+     * @return the settings model of the output mode.
+     */
+    static SettingsModelString createOutputModel() {
+        return new SettingsModelString(OUTPUT_KEY,
+                PredictionCellFactory.COLUMNS);
+    }
+
+    /**
+     * @return the settings model of the number of labels in top k mode.
+     */
+    static SettingsModelIntegerBounded createTopKModel() {
+        return new SettingsModelIntegerBounded(TOPK_KEY, DEFAULT_TOPK, 1,
+                Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the settings model of the number of cached row predictions.
+     */
+    static SettingsModelIntegerBounded createCacheSizeModel() {
+        return new SettingsModelIntegerBounded(CACHE_KEY, 0, 0,
+                Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the settings model of the pipelined execution.
+     */
+    static SettingsModelBoolean createPipelinedModel() {
+        return new SettingsModelBoolean(PIPELINED_KEY, false);
     }
 
     /**
@@ -357,10 +669,24 @@ public class MekaPredictorNodeModel extends NodeModel {
      * 
      * @return Evaluation
      */
-    public final String getEvaluation() {
+    public final synchronized String getEvaluation() {
+        if (m_eval == null) {
+            m_eval = m_evalHeader + m_evaluation;
+        }
         return m_eval;
     }
 
+    /*
+     * Sets the evaluation, the text is rendered on first request. Without
+     * evaluation the header is the text.
+     */
+    private synchronized void setEvaluation(final String header,
+            final StreamingEvaluation evaluation) {
+        m_evalHeader = header;
+        m_evaluation = evaluation;
+        m_eval = evaluation == null ? header : null;
+    }
+
     /**
      * 
      * @return meka-Classifier
@@ -5,6 +5,7 @@ import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
 import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
 import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.meka.knime.utils.PredictionCellFactory;
 
 /**
  * <code>NodeDialog</code> for the "MekaPerformance" Node.
@@ -35,7 +36,12 @@ public class MekaRankingNodeDialog extends DefaultNodeSettingsPane {
                     "Counter:", /*step*/ 1, /*componentwidth*/ 5));
         addDialogComponent(new DialogComponentStringSelection(
                 new SettingsModelString(MekaRankingNodeModel.STRSEL, null),
-                "Select Modes:","PCut1", "PCutL"));
+                "Select Modes:","PCut1", "PCutL", "F1"));
+        addDialogComponent(new DialogComponentStringSelection(
+                MekaRankingNodeModel.createOutputModel(), "Output:",
+                PredictionCellFactory.MODES));
+        addDialogComponent(new DialogComponentNumber(
+                MekaRankingNodeModel.createTopKModel(), "Top k labels:", 1));
                     
     }
 }
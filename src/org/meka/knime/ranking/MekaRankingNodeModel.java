@@ -6,32 +6,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.Vector;
 
-import meka.classifiers.multilabel.Evaluation;
 import meka.classifiers.multilabel.MultiLabelClassifier;
-import meka.core.MLEvalUtils;
-import meka.core.Result;
-import meka.core.ThresholdUtils;
 
 import org.knime.base.data.util.DataCellStringMapper;
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
-import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
-import org.knime.core.data.DataTable;
 import org.knime.core.data.DataTableSpec;
-import org.knime.core.data.DataTableSpecCreator;
-import org.knime.core.data.RowKey;
-import org.knime.core.data.container.ColumnRearranger;
 import org.knime.core.data.def.DefaultRow;
-import org.knime.core.data.def.DoubleCell;
-import org.knime.core.data.def.IntCell;
-import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
@@ -50,8 +36,11 @@ import org.knime.core.node.NodeSettingsWO;
 import org.meka.knime.ports.MekaClassifierModelPortObject;
 import org.meka.knime.ports.MekaClassifierModelPortObjectSpec;
 import org.meka.knime.utils.MekaConverter;
-
-import com.sun.istack.internal.logging.Logger;
+import org.meka.knime.utils.ModelRegistry;
+import org.meka.knime.utils.PredictionCellFactory;
+import org.meka.knime.utils.ReusableInstance;
+import org.meka.knime.utils.StreamingEvaluation;
+import org.meka.knime.utils.ThresholdCalibrator;
 
 import weka.core.Instances;
 
@@ -76,12 +65,31 @@ public class MekaRankingNodeModel extends NodeModel {
 	
 	private final SettingsModelString m_selStr =
             new SettingsModelString(STRSEL, null);
+
+    /** Settings key of the output mode. */
+    static final String OUTPUT_KEY = "Output";
+
+    /** Settings key of the number of labels in top k mode. */
+    static final String TOPK_KEY = "TopK";
+
+    /** Default number of labels in top k mode. */
+    static final int DEFAULT_TOPK = 10;
+
+    private final SettingsModelString m_output = createOutputModel();
+
+    private final SettingsModelIntegerBounded m_topK = createTopKModel();
 	
 	private static final String MEKA_FILE = "MekaClassifier";
 	
 	private Instances m_trainingInstances;
 	private MultiLabelClassifier m_classifier;
 	private String m_eval = "";
+
+    /* The evaluation of the last execution, rendered lazily into m_eval */
+    private StreamingEvaluation m_evaluation;
+
+    /* The thresholds of the last execution, heading the evaluation text */
+    private String m_evalHeader = "";
 	private boolean m_doEval;
 
     /** initial default count value. */
@@ -114,7 +122,8 @@ public class MekaRankingNodeModel extends NodeModel {
      */
     public MekaRankingNodeModel() {
         super(new PortType[]{MekaClassifierModelPortObject.TYPE,
-                BufferedDataTable.TYPE}, new PortType[]{BufferedDataTable.TYPE});
+                BufferedDataTable.TYPE}, new PortType[]{BufferedDataTable.TYPE,
+                BufferedDataTable.TYPE});
         
         
     }
@@ -125,186 +134,110 @@ public class MekaRankingNodeModel extends NodeModel {
     @Override
     protected PortObject[] execute(final PortObject[] inData,
             final ExecutionContext exec) throws Exception {
-
-        logger.info("Node Model Stub... this is not yet implemented !");
-        BufferedDataTable testdata = (BufferedDataTable)inData[1];
-        
-        //BufferedDataTable bdt = (BufferedDataTable)inData[1];
-        //DataTableSpec spec = bdt.getDataTableSpec();
-        //ExecutionMonitor convertExecMonitor = exec.createSubProgress(.5);
-        //MekaConverter mekacon = new MekaConverter(spec);
-        //Instances trainingInstances =
-                //mekacon.convertToMeka(bdt, convertExecMonitor);
-        //logger.info(trainingInstances.toSummaryString());
-                      
-        //DataCellStringMapper mapper = mekacon.getMapping();
-
-        //trainingInstances.setClassIndex(m_classcols.size());
-        
-       
-        
-        PortObject specPort = inData[0];
-        MekaClassifierModelPortObject mekaout = (MekaClassifierModelPortObject) specPort;
-        MekaClassifierModelPortObjectSpec out = mekaout.getSpec();
-        
         MekaClassifierModelPortObject model =
                 (MekaClassifierModelPortObject)inData[0];
-        //DataTableSpec trainingspec = model.getSpec().getSpec();
-        //isSubSpec(testdata.getDataTableSpec(), trainingspec);
-        //List<String> classcolname = model.getSpec().getClassCols();
-        //DataTableSpec testspec = testdata.getDataTableSpec();
-        //Since we have multiple classes names so checking all
-        
-               
+        BufferedDataTable testdata = (BufferedDataTable)inData[1];
+        DataTableSpec trainingspec = model.getSpec().getSpec();
+        DataTableSpec testspec = testdata.getDataTableSpec();
+        isSubSpec(testspec, trainingspec);
+        List<String> classcolname = model.getSpec().getClassCols();
+        int nrLabels = classcolname.size();
+
+        ModelRegistry.release(m_classifier);
         m_classifier = (MultiLabelClassifier) model.getClassifier();
+        // the class index is set by the port
         m_trainingInstances = model.getTrainingInstances();
-        
-        //DataTableSpec dts = out.getSpec();
-        //BufferedDataTable spec = inData[0];
-        //PortObject pO = spec;
-        
-        
-        //MekaClassifierModelPortObject mekaout = (MekaClassifierModelPortObject) pO;
-        
-        /*MekaClassifierModelPortObjectSpec mekaout =
-                new MekaClassifierModelPortObjectSpec(m_classcols, spec);*/
-        //MekaClassifierModelPortObjectSpec out = mekaout.getSpec();
-        //DataTableSpec dts = mekaout.getSpec();
-        //
-        
-                
-        //MekaClassifierModelPortObject model = (MekaClassifierModelPortObject) modelport;
-        DataTableSpec trainingspec =  model.getSpec().getSpec();
-        //isSubSpec(testdata.getDataTableSpec(), trainingspec);
-        List<String> classcolname = model.getSpec().getClassCols();
-        //DataTableSpec testspec = testdata.getDataTableSpec();
-        //Since we have multiple classes names so checking all
-        /*for(int i = 0; i < classcolname.size(); i ++){
-        	if (testspec.findColumnIndex(classcolname.get(i)) >= 0) {
-                m_doEval = true;
-            } else {
-                m_doEval = false;
-            }
-        }*/
-               
-        //m_classifier = (MultiLabelClassifier) model.getClassifier();
-        //m_trainingInstances = model.getTrainingInstances();
-        
-        /*ColumnRearranger colre =
-                new ColumnRearranger(testdata.getDataTableSpec());*/
-        //Getting column specifications with respect to class column names
-        DataColumnSpec[] classcolspec = new DataColumnSpec[classcolname.size()];
-        for(int i = 0; i < classcolname.size(); i ++){
-        	classcolspec[i] = trainingspec.getColumnSpec(classcolname.get(i));
-        }        		
-        
-        /*
-        Vector<Integer> posVec = new Vector<Integer>();
-        for (int i = 0; i < trainingspec.getNumColumns(); i++) {
-            DataColumnSpec colspec = trainingspec.getColumnSpec(i);
-            if (!m_doEval && colspec.equalStructure(classcolspec[i])) {
-                // do not add
-            } else {
-                //int position = testspec.findColumnIndex(colspec.getName());
-                //assert (position >= 0);
-                //posVec.add(position);
 
-            }
-        }
-        int[] positions = new int[posVec.size()];
-        for (int j = 0; j < positions.length; j++) {
-            positions[j] = posVec.get(j);
-        }*/
-        /*colre.permute(positions);
-        colre.keepOnly(positions);
-        testdata = exec.createColumnRearrangeTable(testdata, colre, exec);*/
-
-        //DataCellStringMapper mapper = model.getMapper();
-        //Instances testInstances = null;
-        //ExecutionMonitor trainingConvert = exec.createSubProgress(.4);
+        // the thresholds are calibrated on the predictions of the training
+        // data, once per model port
+        String strategy = getThresholdStrategy();
+        double[] thresholds = model.getThresholds(strategy,
+                exec.createSubProgress(.5));
+
+        // the test rows are converted one at a time, in the column order of
+        // the training data
+        Instances header = new Instances(m_trainingInstances, 0);
+        int[] order = MekaConverter.bindColumns(trainingspec, testspec,
+                nrLabels);
         m_doEval = true;
-        Result res = null;
-        String voption = "1";
-        if (m_doEval) {
-	        // merge class column of training and test table
-	        DataTableSpec oldTestSpec = testdata.getDataTableSpec();
-	        //taking class indexes an array since we have multiple classes
-	        Integer[] classIndex = new Integer[classcolname.size()];	        
-        	
-            /*MekaConverter mekacon =
-                    new MekaConverter(testdata.getDataTableSpec());*/
-           //testInstances = mekacon.convertToMeka(bdt, trainingConvert);
-            //logger.debug(testInstances.toSummaryString());
-            
-            int newClassIndex = out.getClassCols().size();
-            	
-            m_trainingInstances.setClassIndex(newClassIndex);
-            //res=Evaluation.testClassifier(m_classifier, testInstances);
-            res=Evaluation.testClassifier(m_classifier, m_trainingInstances);
-			res.setInfo("Type","ML");
-            m_eval = res.toString();
-            // TODO: assert that m_selStr is set or get stnd
-            // TODO: implement Read Threshold method
-            if(m_selStr.getStringValue().equals("PCut1"))
-            	res.setInfo("Threshold",MLEvalUtils.getThreshold(res.predictions,m_trainingInstances,"PCut1"));
-            else if(m_selStr.getStringValue().equals("PCutL"))
-            	res.setInfo("Threshold",MLEvalUtils.getThreshold(res.predictions,m_trainingInstances,"PCutL"));
-            
-            res.setInfo("Verbosity",voption);
-            res.output = Result.getStats(res, voption);
-            
-            
-            int Y[][] = res.allTrueValues();
-            double ts[] = ThresholdUtils.thresholdStringToArray(res.getInfo("Threshold"),Y[0].length);
-                        
-            
-            //All Predictions
-            int Ypred[][] = ThresholdUtils.threshold(res.allPredictions(),ts);
-              //To be used for new node (Ranking to classes)
-            m_eval = Result.getStats(res, "2").toString();
-            //List<double[]> preds=res.predictions;
-            
-            DataColumnSpec[] newcolspecs = 
-                    new DataColumnSpec[newClassIndex];
-            for(int index = 0; index < classcolname.size(); index ++){
-            	classIndex[index] = oldTestSpec.findColumnIndex(classcolname.get(index));
-            
-            	DataColumnSpecCreator newclassColumn =
-                    new DataColumnSpecCreator(
-                            oldTestSpec.getColumnSpec(classIndex[index]));
-	            //newclassColumn.merge(classcolspec[index]);
-	            newclassColumn.setType(DoubleCell.TYPE);
-            
-                    newcolspecs[index] = newclassColumn.createSpec();                    
+        for (int l = 0; l < nrLabels; l++) {
+            m_doEval &= order[l] >= 0;
+        }
+
+        DataCellStringMapper mapper = model.getMapper();
+        PredictionCellFactory cellFactory = createCellFactory(classcolname);
+        BufferedDataContainer buf =
+                exec.createDataContainer(cellFactory.createSpec());
+        ExecutionMonitor scoreExec = exec.createSubProgress(.5);
+        double nrRows = Math.max(1, testdata.getRowCount());
+        long rows = 0;
+        StreamingEvaluation evaluation = new StreamingEvaluation(nrLabels);
+        int[] truth = new int[nrLabels];
+        // one instance for all rows, overwritten in place
+        ReusableInstance x = new ReusableInstance(header);
+        for (DataRow row : testdata) {
+            MekaConverter.convertInto(row, x, mapper, order);
+            for (int l = 0; l < nrLabels; l++) {
+                truth[l] = m_doEval && !x.isMissing(l)
+                        ? (int)Math.round(x.value(l)) : 0;
+                // the labels are unknown to the classifier, like in
+                // Evaluation.testClassifier
+                x.setValue(l, 0.0);
             }
-            DataTableSpec newspec = new DataTableSpec(newcolspecs);
-
-            BufferedDataContainer buf = exec.createDataContainer(newspec);
-
-            for (int j = 0; j < Ypred.length; j++) {
-            	
-            	
-            	int[] pred= Ypred[j];
-            	
-            	
-                DataCell[] cells = new DataCell[pred.length];
-                for (int i=0;i<pred.length;i++){
-                	IntCell dc=new IntCell(pred[i]);
-                	cells[i]=dc;
-                }                	
-                
-                DataRow row = new DefaultRow(
-                "Row" + j, cells);
-                buf.addRowToTable(row);
+            double[] y = m_classifier.distributionForInstance(x);
+            if (m_doEval) {
+                evaluation.add(y, truth, thresholds);
             }
-            buf.close();
-            BufferedDataTable classified = buf.getTable();
-
-            return new BufferedDataTable[]{classified};                		
-                
+            buf.addRowToTable(new DefaultRow(row.getKey(),
+                    cellFactory.createCells(y, thresholds)));
+            rows++;
+            scoreExec.setProgress(rows / nrRows, "Ranking row " + rows);
+            scoreExec.checkCanceled();
         }
-		return null;       
+        buf.close();
+
+        // the text report is rendered when the view asks for it
+        setEvaluation("Threshold (" + strategy + "): "
+                + Arrays.toString(thresholds) + "\n" + (m_doEval ? ""
+                : "N: " + rows + "\n"), m_doEval ? evaluation : null);
+        return new BufferedDataTable[]{buf.getTable(),
+                StreamingEvaluation.createMeasuresTable(m_evaluation, exec)};
+    }
+
+    /*
+     * The selected threshold strategy, PCut1 if none is selected.
+     */
+    private String getThresholdStrategy() {
+        String strategy = m_selStr.getStringValue();
+        return strategy == null ? ThresholdCalibrator.PCUT1 : strategy;
+    }
+
+    /*
+     * The output cells in the selected mode, one rank column per label by
+     * default.
+     */
+    private PredictionCellFactory createCellFactory(
+            final List<String> classcolname) {
+        return new PredictionCellFactory(m_output.getStringValue(),
+                classcolname, true, m_topK.getIntValue());
+    }
+
+    /**
+     * @return the settings model of the output mode.
+     */
+    static SettingsModelString createOutputModel() {
+        return new SettingsModelString(OUTPUT_KEY,
+                PredictionCellFactory.COLUMNS);
+    }
+
+    /**
+     * @return the settings model of the number of labels in top k mode.
+     */
+    static SettingsModelIntegerBounded createTopKModel() {
+        return new SettingsModelIntegerBounded(TOPK_KEY, DEFAULT_TOPK, 1,
+                Integer.MAX_VALUE);
     }
+
     /*
      * Tests that the DataTableSpec of the test data has not more possible
      * values than the DataTableSpec of the training data.
@@ -344,7 +277,16 @@ public class MekaRankingNodeModel extends NodeModel {
      */
     @Override
     protected void reset() {
-    	m_eval = "";
+    	setEvaluation("", null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDispose() {
+        ModelRegistry.release(m_classifier);
+        m_classifier = null;
     }
 
     /**
@@ -353,8 +295,15 @@ public class MekaRankingNodeModel extends NodeModel {
     @Override
     protected DataTableSpec[] configure(final PortObjectSpec[] inSpecs)
             throws InvalidSettingsException {        
-        
-        return new DataTableSpec[]{null};
+        MekaClassifierModelPortObjectSpec modelspec =
+                (MekaClassifierModelPortObjectSpec)inSpecs[0];
+        if (modelspec == null) {
+            return new DataTableSpec[]{null,
+                    StreamingEvaluation.createMeasuresSpec()};
+        }
+        return new DataTableSpec[]{
+                createCellFactory(modelspec.getClassCols()).createSpec(),
+                StreamingEvaluation.createMeasuresSpec()};
     }
 
     /**
@@ -365,6 +314,8 @@ public class MekaRankingNodeModel extends NodeModel {
         
         //m_count.saveSettingsTo(settings);
     	m_selStr.saveSettingsTo(settings);
+        m_output.saveSettingsTo(settings);
+        m_topK.saveSettingsTo(settings);
 
     }
 
@@ -378,6 +329,11 @@ public class MekaRankingNodeModel extends NodeModel {
                 
         //m_count.loadSettingsFrom(settings);
     	m_selStr.loadSettingsFrom(settings);
+        // added later, older workflows write one column per label
+        if (settings.containsKey(OUTPUT_KEY)) {
+            m_output.loadSettingsFrom(settings);
+            m_topK.loadSettingsFrom(settings);
+        }
 
     }
 
@@ -391,6 +347,10 @@ public class MekaRankingNodeModel extends NodeModel {
 
         //m_count.validateSettings(settings);
     	m_selStr.validateSettings(settings);
+        if (settings.containsKey(OUTPUT_KEY)) {
+            m_output.validateSettings(settings);
+            m_topK.validateSettings(settings);
+        }
 
     }
     /**
@@ -405,8 +365,17 @@ public class MekaRankingNodeModel extends NodeModel {
         ObjectInputStream in = null;
         try {
             in = new ObjectInputStream(new FileInputStream(f));
-            m_classifier = (MultiLabelClassifier)in.readObject();
-            m_eval = in.readUTF();
+            Object classifier = in.readObject();
+            ModelRegistry.release(m_classifier);
+            if (classifier instanceof byte[]) {
+                // shared with the other nodes holding the same model
+                m_classifier = (MultiLabelClassifier)ModelRegistry.acquire(
+                        (byte[])classifier);
+            } else {
+                // written before the registry
+                m_classifier = (MultiLabelClassifier)classifier;
+            }
+            setEvaluation(in.readUTF(), null);
         } catch (ClassNotFoundException e) {
         	logger.error("Could not read meka classifier", e);
             IOException ioe = new IOException();
@@ -435,8 +404,11 @@ public class MekaRankingNodeModel extends NodeModel {
         ObjectOutputStream out = null;
         try {
             out = new ObjectOutputStream(new FileOutputStream(f));
-            out.writeObject(m_classifier);
-            out.writeUTF(m_eval);
+            // serialized separately, the bytes identify the model in the
+            // registry when loaded
+            out.writeObject(m_classifier == null ? null
+                    : ModelRegistry.serialize(m_classifier));
+            out.writeUTF(getEvaluation());
             exec.setProgress(.5);
             exec.checkCanceled();
         } catch (IOException ioe) {
@@ -464,9 +436,23 @@ public class MekaRankingNodeModel extends NodeModel {
      * 
      * @return Evaluation
      */
-    public final String getEvaluation() {
+    public final synchronized String getEvaluation() {
+        if (m_eval == null) {
+            m_eval = m_evalHeader + m_evaluation;
+        }
         return m_eval;
     }
 
+    /*
+     * Sets the evaluation, the text is rendered on first request. Without
+     * evaluation the header is the text.
+     */
+    private synchronized void setEvaluation(final String header,
+            final StreamingEvaluation evaluation) {
+        m_evalHeader = header;
+        m_evaluation = evaluation;
+        m_eval = evaluation == null ? header : null;
+    }
+
 }
 
@@ -1,5 +1,8 @@
 package org.meka.knime.ranking;
 
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+
 import org.knime.core.node.NodeView;
 
 /**
@@ -10,6 +13,9 @@ import org.knime.core.node.NodeView;
  */
 public class MekaRankingNodeView extends NodeView<MekaRankingNodeModel> {
 
+    /* The evaluation text, rendered by the model on request */
+    private final JTextArea m_text = new JTextArea(20, 40);
+
     /**
      * Creates a new view.
      * 
@@ -17,9 +23,9 @@ public class MekaRankingNodeView extends NodeView<MekaRankingNodeModel> {
      */
     protected MekaRankingNodeView(final MekaRankingNodeModel nodeModel) {
         super(nodeModel);
-
-        // TODO instantiate the components of the view here.
-
+        m_text.setEditable(false);
+        setComponent(new JScrollPane(m_text));
+        modelChanged();
     }
 
     /**
@@ -27,16 +33,11 @@ public class MekaRankingNodeView extends NodeView<MekaRankingNodeModel> {
      */
     @Override
     protected void modelChanged() {
-
-        // TODO retrieve the new model from your nodemodel and 
-        // update the view.
         MekaRankingNodeModel nodeModel = 
             (MekaRankingNodeModel)getNodeModel();
         assert nodeModel != null;
-        
-        // be aware of a possibly not executed nodeModel! The data you retrieve
-        // from your nodemodel could be null, emtpy, or invalid in any kind.
-        
+        // the evaluation text is rendered only when the view is open
+        m_text.setText(nodeModel.getEvaluation());
     }
 
     /**
@@ -0,0 +1,144 @@
+package org.meka.knime.scoring;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test client of a {@link MekaScoringServer}: a number of threads send
+ * requests of a fixed number of rows for a fixed time, the rows taken in turn
+ * from a file (one row per line, the values tab separated). Prints the
+ * throughput, the client side latency histogram and the statistics of the
+ * server.
+ *
+ * @author Fernando Benites
+ */
+public final class MekaScoringLoadTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private MekaScoringLoadTest() {
+        // main only
+    }
+
+    /**
+     * @param args the server url (e.g. http://127.0.0.1:8787), the rows
+     *            file, optionally the number of threads, the duration in
+     *            seconds and the rows per request.
+     * @throws Exception if the rows cannot be read or a thread fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: MekaScoringLoadTest <server url>"
+                    + " <rows file> [threads] [seconds] [rows per request]");
+            System.exit(1);
+        }
+        final String url = args[0].endsWith("/") ? args[0] : args[0] + "/";
+        final List<String> rows = readRows(new File(args[1]));
+        int nrThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+        final int batch = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        if (rows.isEmpty()) {
+            throw new IOException("No rows in " + args[1]);
+        }
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong scored = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final long end = System.nanoTime() + seconds * 1000000000L;
+        Thread[] threads = new Thread[nrThreads];
+        for (int t = 0; t < nrThreads; t++) {
+            final int offset = t * batch;
+            threads[t] = new Thread("Load " + t) {
+                @Override
+                public void run() {
+                    int next = offset;
+                    while (System.nanoTime() < end) {
+                        StringBuilder body = new StringBuilder();
+                        for (int r = 0; r < batch; r++) {
+                            body.append(rows.get(next++ % rows.size()))
+                                    .append('\n');
+                        }
+                        long start = System.nanoTime();
+                        try {
+                            post(url + "score", body.toString());
+                            scored.addAndGet(batch);
+                        } catch (IOException ioe) {
+                            errors.incrementAndGet();
+                        }
+                        latency.record(System.nanoTime() - start);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("Threads: " + nrThreads + ", rows per request: "
+                + batch + ", errors: " + errors.get());
+        System.out.println(String.format("Throughput: %.1f requests/s, "
+                + "%.1f rows/s", latency.getCount() / (double)seconds,
+                scored.get() / (double)seconds));
+        System.out.println("Client: " + latency);
+        System.out.print("Server: " + get(url + "stats"));
+    }
+
+    private static List<String> readRows(final File file) throws IOException {
+        List<String> rows = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    rows.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return rows;
+    }
+
+    private static String post(final String url, final String body)
+            throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection)new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(body.getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+        return read(connection);
+    }
+
+    private static String get(final String url) throws IOException {
+        return read((HttpURLConnection)new URL(url).openConnection());
+    }
+
+    private static String read(final HttpURLConnection connection)
+            throws IOException {
+        if (connection.getResponseCode() != 200) {
+            // drain, so the connection is kept alive
+            if (connection.getErrorStream() != null) {
+                MekaScoringServer.readAll(connection.getErrorStream());
+            }
+            throw new IOException("HTTP " + connection.getResponseCode());
+        }
+        return new String(MekaScoringServer.readAll(
+                connection.getInputStream()), UTF8);
+    }
+}
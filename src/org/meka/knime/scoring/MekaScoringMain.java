@@ -0,0 +1,144 @@
+package org.meka.knime.scoring;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.meka.knime.utils.ReusableInstance;
+
+/**
+ * Entry point of an exported scoring bundle, needs MEKA and WEKA but no
+ * KNIME. Scores the rows read from standard input (one row per line, the
+ * values tab separated in the order of the features) and writes their label
+ * scores to standard output, or serves the model with a
+ * {@link MekaScoringServer}. The model is read from the bundle
+ * ({@link #MODEL_RESOURCE}) unless a model file is given.
+ *
+ * @author Fernando Benites
+ */
+public final class MekaScoringMain {
+
+    /** The resource of the model in a scoring bundle. */
+    public static final String MODEL_RESOURCE = "/model.ser";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private MekaScoringMain() {
+        // main only
+    }
+
+    /**
+     * @param args <code>--model file</code> to read another model,
+     *            <code>--features</code> to print the feature names,
+     *            <code>--thresholded</code> to write the thresholded labels,
+     *            <code>--serve [port] [max batch rows]</code> to start a
+     *            server.
+     * @throws Exception if the model cannot be read or fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        String file = null;
+        boolean thresholded = false;
+        boolean features = false;
+        int serve = -1;
+        for (int i = 0; i < args.length; i++) {
+            if ("--model".equals(args[i]) && i + 1 < args.length) {
+                file = args[++i];
+            } else if ("--thresholded".equals(args[i])) {
+                thresholded = true;
+            } else if ("--features".equals(args[i])) {
+                features = true;
+            } else if ("--serve".equals(args[i])) {
+                serve = i;
+                break;
+            } else {
+                System.err.println("Usage: java -jar meka-scoring.jar"
+                        + " [--model file] [--features] [--thresholded]"
+                        + " [--serve [port] [max batch rows]]");
+                System.exit(1);
+            }
+        }
+        MekaScoringModel model = readModel(file);
+        if (features) {
+            for (String name : model.getFeatureNames()) {
+                System.out.println(name);
+            }
+        } else if (serve >= 0) {
+            serve(model, args, serve + 1);
+        } else {
+            score(model, thresholded);
+        }
+    }
+
+    private static MekaScoringModel readModel(final String file)
+            throws IOException, ClassNotFoundException {
+        InputStream in = file == null
+                ? MekaScoringMain.class.getResourceAsStream(MODEL_RESOURCE)
+                : new FileInputStream(file);
+        if (in == null) {
+            throw new IOException("No model in the bundle, use --model");
+        }
+        try {
+            return MekaScoringModel.read(new BufferedInputStream(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void serve(final MekaScoringModel model,
+            final String[] args, final int first) throws Exception {
+        int port = args.length > first ? Integer.parseInt(args[first])
+                : MekaScoringServer.DEFAULT_PORT;
+        int maxBatch = args.length > first + 1
+                ? Integer.parseInt(args[first + 1])
+                : MekaScoringServer.DEFAULT_MAX_BATCH;
+        final MekaScoringServer server =
+                new MekaScoringServer(model, maxBatch);
+        server.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop();
+                System.err.print(server.getStatistics());
+            }
+        });
+        System.err.println("Scoring on port " + server.getPort());
+    }
+
+    private static void score(final MekaScoringModel model,
+            final boolean thresholded) throws Exception {
+        double[] thresholds = model.getThresholds();
+        ReusableInstance x = model.createInstance();
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(System.in, UTF8));
+        Writer out = new BufferedWriter(
+                new OutputStreamWriter(System.out, UTF8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            double[] scores = model.score(line.split("\t", -1), x);
+            for (int l = 0; l < scores.length; l++) {
+                if (l > 0) {
+                    out.write('\t');
+                }
+                if (thresholded) {
+                    // same rule as ThresholdUtils.threshold
+                    double t = thresholds == null ? 0.5 : thresholds[l];
+                    out.write(scores[l] >= t ? '1' : '0');
+                } else {
+                    out.write(Double.toString(scores[l]));
+                }
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,226 @@
+package org.meka.knime.scoring;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import meka.classifiers.multilabel.MultiLabelClassifier;
+
+import org.meka.knime.utils.ReusableInstance;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * A trained multi-label classifier with everything needed to score rows of
+ * plain strings outside of KNIME: the classifier, the header of the training
+ * data (without rows), the original column names and nominal values (mapped
+ * to the weka strings by the DataCellStringMapper of the model port) and the
+ * calibrated thresholds. Depends on MEKA and WEKA only.
+ *
+ * @author Fernando Benites
+ */
+public class MekaScoringModel implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Missing value of a row. */
+    public static final String MISSING = "?";
+
+    /* The classifier. */
+    private final MultiLabelClassifier m_classifier;
+
+    /* The training header, the labels first, the class index is L. */
+    private final Instances m_header;
+
+    /* The original column name of every attribute. */
+    private final String[] m_names;
+
+    /* The weka string of the original nominal values, if mapped. */
+    private final HashMap<String, String> m_values;
+
+    /* The PCut1 thresholds, null if not calibrated. */
+    private final double[] m_thresholds;
+
+    /**
+     * @param classifier the trained classifier.
+     * @param header the training header, the class index is the number of
+     *            labels; the rows are dropped.
+     * @param names the original column name of every attribute.
+     * @param values the weka string of every original nominal value that is
+     *            mapped to a different string.
+     * @param thresholds the label thresholds, null if not calibrated.
+     */
+    public MekaScoringModel(final MultiLabelClassifier classifier,
+            final Instances header, final String[] names,
+            final Map<String, String> values, final double[] thresholds) {
+        if (header.classIndex() <= 0) {
+            throw new IllegalArgumentException(
+                    "The class index must be the number of labels");
+        }
+        m_classifier = classifier;
+        m_header = new Instances(header, 0);
+        m_names = names.clone();
+        m_values = new HashMap<String, String>(values);
+        m_thresholds = thresholds == null ? null : thresholds.clone();
+    }
+
+    /**
+     * @return the classifier.
+     */
+    public MultiLabelClassifier getClassifier() {
+        return m_classifier;
+    }
+
+    /**
+     * @return the training header, must not be modified.
+     */
+    public Instances getHeader() {
+        return m_header;
+    }
+
+    /**
+     * @return the number of labels.
+     */
+    public int getNrLabels() {
+        return m_header.classIndex();
+    }
+
+    /**
+     * @return the label names.
+     */
+    public String[] getLabelNames() {
+        String[] labels = new String[getNrLabels()];
+        System.arraycopy(m_names, 0, labels, 0, labels.length);
+        return labels;
+    }
+
+    /**
+     * @return the feature names, in the order the values of a row are
+     *         expected.
+     */
+    public String[] getFeatureNames() {
+        String[] features = new String[m_names.length - getNrLabels()];
+        System.arraycopy(m_names, getNrLabels(), features, 0,
+                features.length);
+        return features;
+    }
+
+    /**
+     * @return the PCut1 thresholds, null if not calibrated.
+     */
+    public double[] getThresholds() {
+        return m_thresholds == null ? null : m_thresholds.clone();
+    }
+
+    /**
+     * @return an instance to convert rows into, one per thread.
+     */
+    public ReusableInstance createInstance() {
+        return new ReusableInstance(m_header);
+    }
+
+    /**
+     * Converts a row, the labels set to 0. Numeric values that cannot be
+     * parsed, nominal and string values unknown to the training header, null
+     * and {@link #MISSING} are missing; the header is never extended.
+     *
+     * @param features the feature values, see {@link #getFeatureNames()}.
+     * @param target the instance to overwrite, from
+     *            {@link #createInstance()}.
+     * @return the given instance.
+     */
+    public Instance convert(final String[] features,
+            final ReusableInstance target) {
+        int nrLabels = getNrLabels();
+        int nrFeatures = m_names.length - nrLabels;
+        if (features.length != nrFeatures) {
+            throw new IllegalArgumentException("Expected " + nrFeatures
+                    + " values, got " + features.length);
+        }
+        for (int l = 0; l < nrLabels; l++) {
+            target.setValue(l, 0.0);
+        }
+        for (int f = 0; f < nrFeatures; f++) {
+            int a = nrLabels + f;
+            String value = features[f];
+            Attribute att = m_header.attribute(a);
+            double v = Double.NaN;
+            if (value != null && !MISSING.equals(value)) {
+                if (att.isNumeric()) {
+                    try {
+                        v = Double.parseDouble(value.trim());
+                    } catch (NumberFormatException nfe) {
+                        v = Double.NaN;
+                    }
+                } else if (att.isNominal() || att.isString()) {
+                    String mapped = m_values.get(value);
+                    int index = att.indexOfValue(
+                            mapped == null ? value : mapped);
+                    v = index < 0 ? Double.NaN : index;
+                }
+            }
+            target.setValue(a, v);
+        }
+        return target;
+    }
+
+    /**
+     * Scores a row. Not thread safe, the classifier is shared.
+     *
+     * @param features the feature values, see {@link #getFeatureNames()}.
+     * @param target the instance to convert the row into.
+     * @return the label scores.
+     * @throws Exception if the classifier fails.
+     */
+    public double[] score(final String[] features,
+            final ReusableInstance target) throws Exception {
+        double[] y = m_classifier.distributionForInstance(
+                convert(features, target));
+        double[] scores = new double[getNrLabels()];
+        System.arraycopy(y, 0, scores, 0, scores.length);
+        return scores;
+    }
+
+    /**
+     * Scores a row of missing values a number of times, so the classes are
+     * loaded and the scoring code compiled before the first request.
+     *
+     * @param iterations the number of scored rows.
+     * @throws Exception if the classifier fails.
+     */
+    public void warmUp(final int iterations) throws Exception {
+        String[] row = new String[m_names.length - getNrLabels()];
+        ReusableInstance x = createInstance();
+        for (int i = 0; i < iterations; i++) {
+            score(row, x);
+        }
+    }
+
+    /**
+     * @param out the stream, not closed.
+     * @throws IOException if the model cannot be written.
+     */
+    public void write(final OutputStream out) throws IOException {
+        ObjectOutputStream oo = new ObjectOutputStream(out);
+        oo.writeObject(this);
+        oo.flush();
+    }
+
+    /**
+     * @param in the stream, not closed.
+     * @return the model.
+     * @throws IOException if the model cannot be read.
+     * @throws ClassNotFoundException if a class of the model is unknown.
+     */
+    public static MekaScoringModel read(final InputStream in)
+            throws IOException, ClassNotFoundException {
+        return (MekaScoringModel)new ObjectInputStream(in).readObject();
+    }
+}
@@ -0,0 +1,177 @@
+package org.meka.knime.scoring;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import meka.classifiers.multilabel.MultiLabelClassifier;
+
+import org.knime.base.data.util.DataCellStringMapper;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContent;
+import org.knime.core.node.ModelContentRO;
+import org.meka.knime.utils.ThresholdCalibrator;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * Creates {@link MekaScoringModel}s from model ports, or reads them from a
+ * saved model port (the zip file written for a
+ * {@link org.meka.knime.ports.MekaClassifierModelPortObject}) without
+ * running KNIME. Needs the KNIME core classes to parse the mapper.
+ *
+ * @author Fernando Benites
+ */
+public final class MekaScoringModelReader {
+
+    /* The zip entries of the model port. */
+    private static final String CLASSIFIER_ENTRY = "classifier.objectout";
+
+    private static final String TRAINING_ENTRY = "training.objectout";
+
+    private static final String MAPPER_ENTRY = "mapper.xmlout";
+
+    private static final String THRESHOLDS_ENTRY = "thresholds.xmlout";
+
+    /* Key of the mapper in the mapper entry. */
+    private static final String MAPPER_KEY = "mapper";
+
+    private MekaScoringModelReader() {
+        // utility class
+    }
+
+    /**
+     * @param classifier the trained classifier.
+     * @param training the training instances, the class index is the number
+     *            of labels.
+     * @param mapper maps the original strings to the weka strings.
+     * @param thresholds the label thresholds, null if not calibrated.
+     * @return the scoring model.
+     */
+    public static MekaScoringModel create(
+            final MultiLabelClassifier classifier, final Instances training,
+            final DataCellStringMapper mapper, final double[] thresholds) {
+        String[] names = new String[training.numAttributes()];
+        Map<String, String> values = new HashMap<String, String>();
+        for (int a = 0; a < names.length; a++) {
+            Attribute att = training.attribute(a);
+            names[a] = original(mapper, att.name());
+            if (att.isNominal()) {
+                for (int v = 0; v < att.numValues(); v++) {
+                    String value = att.value(v);
+                    String orig = original(mapper, value);
+                    if (!orig.equals(value)) {
+                        values.put(orig, value);
+                    }
+                }
+            }
+        }
+        return new MekaScoringModel(classifier, training, names, values,
+                thresholds);
+    }
+
+    private static String original(final DataCellStringMapper mapper,
+            final String string) {
+        String orig = mapper == null ? null : mapper.stringToOrigString(string);
+        return orig == null ? string : orig;
+    }
+
+    /**
+     * Reads a scoring model from a saved model port, or from a file written
+     * by {@link MekaScoringModel#write(java.io.OutputStream)}.
+     *
+     * @param file the file.
+     * @return the scoring model.
+     * @throws IOException if the file cannot be read.
+     */
+    public static MekaScoringModel read(final File file) throws IOException {
+        if (!isZip(file)) {
+            InputStream in =
+                    new BufferedInputStream(new FileInputStream(file));
+            try {
+                return MekaScoringModel.read(in);
+            } catch (ClassNotFoundException cnfe) {
+                throw new IOException("Unknown class in " + file, cnfe);
+            } finally {
+                in.close();
+            }
+        }
+        ZipFile zip = new ZipFile(file);
+        try {
+            MultiLabelClassifier classifier = null;
+            Instances training = null;
+            DataCellStringMapper mapper = null;
+            double[] thresholds = null;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.endsWith(CLASSIFIER_ENTRY)) {
+                    classifier =
+                            (MultiLabelClassifier)readObject(zip, entry);
+                } else if (name.endsWith(TRAINING_ENTRY)) {
+                    training = (Instances)readObject(zip, entry);
+                } else if (name.endsWith(MAPPER_ENTRY)) {
+                    mapper = DataCellStringMapper.load(
+                            readContent(zip, entry).getConfig(MAPPER_KEY));
+                } else if (name.endsWith(THRESHOLDS_ENTRY)) {
+                    ModelContentRO content = readContent(zip, entry);
+                    if (content.containsKey(ThresholdCalibrator.PCUT1)) {
+                        thresholds = content.getDoubleArray(
+                                ThresholdCalibrator.PCUT1);
+                    }
+                }
+            }
+            if (classifier == null || training == null) {
+                throw new IOException("No meka model port: " + file);
+            }
+            return create(classifier, training, mapper, thresholds);
+        } catch (InvalidSettingsException ise) {
+            throw new IOException("Invalid mapper in " + file, ise);
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static boolean isZip(final File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return in.read() == 'P' && in.read() == 'K';
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Object readObject(final ZipFile zip, final ZipEntry entry)
+            throws IOException {
+        ObjectInputStream in =
+                new ObjectInputStream(zip.getInputStream(entry));
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException("Unknown class in " + entry.getName(),
+                    cnfe);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ModelContentRO readContent(final ZipFile zip,
+            final ZipEntry entry) throws IOException {
+        InputStream in = zip.getInputStream(entry);
+        try {
+            return ModelContent.loadFromXML(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package org.meka.knime.scoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.meka.knime.utils.ReusableInstance;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a {@link MekaScoringModel} over HTTP on the loopback interface, for
+ * online scoring on the same machine. The rows of a request are sent one per
+ * line, the values tab separated in the order of the features:
+ * <ul>
+ * <li><code>POST /score</code> returns the label scores of every row, one
+ * line per row, tab separated; with <code>?thresholded</code> the labels
+ * (0/1) thresholded with the PCut1 thresholds of the model.</li>
+ * <li><code>GET /features</code> and <code>GET /labels</code> return the
+ * feature and label names, tab separated.</li>
+ * <li><code>GET /stats</code> returns the latency histogram and the batch
+ * counts.</li>
+ * </ul>
+ * The requests are handed to one scoring thread, which takes the requests
+ * already waiting into a micro batch of at most a fixed number of rows and
+ * scores them together; the classifier is therefore only used by one thread.
+ * The rows are scored one by one, so the thread never waits for further
+ * requests: a request arriving at an idle server is scored at once. The
+ * model is warmed up before the server starts.
+ *
+ * @author Fernando Benites
+ */
+public class MekaScoringServer {
+
+    /** Default port. */
+    public static final int DEFAULT_PORT = 8787;
+
+    /** Default maximal number of rows of a micro batch. */
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    /* Number of rows scored before the server starts. */
+    private static final int WARMUP_ROWS = 1000;
+
+    /* Maximal time a request waits for its scores. */
+    private static final long TIMEOUT_SECONDS = 60;
+
+    /* Disables Nagle's algorithm on the connections of the JDK server. */
+    private static final String NODELAY_PROPERTY =
+            "sun.net.httpserver.nodelay";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /* The model. */
+    private final MekaScoringModel m_model;
+
+    /* Maximal number of rows of a micro batch. */
+    private final int m_maxBatch;
+
+    /* The requests waiting for the scoring thread. */
+    private final BlockingQueue<Request> m_queue =
+            new LinkedBlockingQueue<Request>();
+
+    /* Latency of the requests, from receipt to response. */
+    private final LatencyHistogram m_latency = new LatencyHistogram();
+
+    private final AtomicLong m_batches = new AtomicLong();
+
+    private final AtomicLong m_rows = new AtomicLong();
+
+    private HttpServer m_server;
+
+    private ExecutorService m_executor;
+
+    private Thread m_scorer;
+
+    private volatile boolean m_running;
+
+    /**
+     * @param model the model.
+     * @param maxBatch the maximal number of rows of a micro batch.
+     */
+    public MekaScoringServer(final MekaScoringModel model,
+            final int maxBatch) {
+        m_model = model;
+        m_maxBatch = Math.max(1, maxBatch);
+    }
+
+    /**
+     * Warms the model up and starts the server.
+     *
+     * @param port the port, 0 for any free port.
+     * @throws Exception if the port is not available or the model fails.
+     */
+    public synchronized void start(final int port) throws Exception {
+        m_model.warmUp(WARMUP_ROWS);
+        // the headers and the body of a response are written separately,
+        // with Nagle's algorithm every response waits for a delayed ack
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        m_server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        m_server.createContext("/score", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange)
+                    throws IOException {
+                score(exchange);
+            }
+        });
+        m_server.createContext("/features", new TextHandler() {
+            @Override
+            String text() {
+                return join(m_model.getFeatureNames());
+            }
+        });
+        m_server.createContext("/labels", new TextHandler() {
+            @Override
+            String text() {
+                return join(m_model.getLabelNames());
+            }
+        });
+        m_server.createContext("/stats", new TextHandler() {
+            @Override
+            String text() {
+                return getStatistics();
+            }
+        });
+        m_executor = Executors.newFixedThreadPool(
+                2 * Runtime.getRuntime().availableProcessors());
+        m_server.setExecutor(m_executor);
+        m_running = true;
+        m_scorer = new Thread("MEKA scoring") {
+            @Override
+            public void run() {
+                scoreBatches();
+            }
+        };
+        m_scorer.setDaemon(true);
+        m_scorer.start();
+        m_server.start();
+    }
+
+    /**
+     * @return the port the server listens on.
+     */
+    public synchronized int getPort() {
+        return m_server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server, waiting at most a second for open requests.
+     */
+    public synchronized void stop() {
+        m_running = false;
+        if (m_server != null) {
+            m_server.stop(1);
+            m_executor.shutdown();
+            m_scorer.interrupt();
+        }
+    }
+
+    /**
+     * @return the latency of the requests, from receipt to response.
+     */
+    public LatencyHistogram getLatency() {
+        return m_latency;
+    }
+
+    /**
+     * @return the latency histogram and the batch counts.
+     */
+    public String getStatistics() {
+        long batches = m_batches.get();
+        return "Requests: " + m_latency + "\nBatches: " + batches
+                + ", rows: " + m_rows.get() + ", rows per batch: "
+                + String.format("%.2f", m_rows.get() / Math.max(1.0, batches))
+                + "\n";
+    }
+
+    /*
+     * Parses the rows of a request, waits for the scores and writes them.
+     */
+    private void score(final HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "POST the rows\n");
+                return;
+            }
+            Request request = new Request(parse(exchange.getRequestBody()));
+            m_queue.put(request);
+            if (!request.m_done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                respond(exchange, 503, "Timeout\n");
+                return;
+            }
+            if (request.m_error != null) {
+                respond(exchange, request.m_error
+                        instanceof IllegalArgumentException ? 400 : 500,
+                        request.m_error.getMessage() + "\n");
+                return;
+            }
+            String query = exchange.getRequestURI().getQuery();
+            boolean thresholded =
+                    query != null && query.contains("thresholded");
+            respond(exchange, 200, format(request.m_scores, thresholded));
+        } catch (InterruptedException ie) {
+            respond(exchange, 503, "Interrupted\n");
+        } finally {
+            m_latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /*
+     * The scoring thread, collects the waiting requests into micro batches,
+     * without waiting for requests not yet queued.
+     */
+    private void scoreBatches() {
+        ReusableInstance x = m_model.createInstance();
+        List<Request> batch = new ArrayList<Request>();
+        while (m_running) {
+            try {
+                Request first = m_queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int rows = first.m_rows.length;
+                while (rows < m_maxBatch) {
+                    Request next = m_queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    rows += next.m_rows.length;
+                }
+                for (Request request : batch) {
+                    score(request, x);
+                }
+                m_batches.incrementAndGet();
+                m_rows.addAndGet(rows);
+            } catch (InterruptedException ie) {
+                // stopped
+            } finally {
+                for (Request request : batch) {
+                    request.m_done.countDown();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void score(final Request request, final ReusableInstance x) {
+        try {
+            for (int r = 0; r < request.m_rows.length; r++) {
+                request.m_scores[r] = m_model.score(request.m_rows[r], x);
+            }
+        } catch (Exception e) {
+            request.m_error = e;
+        }
+    }
+
+    private static String[][] parse(final InputStream body)
+            throws IOException {
+        String text = new String(readAll(body), UTF8);
+        List<String[]> rows = new ArrayList<String[]>();
+        for (String line : text.split("\r?\n")) {
+            if (!line.isEmpty()) {
+                rows.add(line.split("\t", -1));
+            }
+        }
+        return rows.toArray(new String[rows.size()][]);
+    }
+
+    private String format(final double[][] scores,
+            final boolean thresholded) {
+        double[] thresholds = m_model.getThresholds();
+        StringBuilder text = new StringBuilder();
+        for (double[] row : scores) {
+            for (int l = 0; l < row.length; l++) {
+                if (l > 0) {
+                    text.append('\t');
+                }
+                if (thresholded) {
+                    // same rule as ThresholdUtils.threshold
+                    double t = thresholds == null ? 0.5 : thresholds[l];
+                    text.append(row[l] >= t ? '1' : '0');
+                } else {
+                    text.append(row[l]);
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String join(final String[] values) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            text.append(i > 0 ? "\t" : "").append(values[i]);
+        }
+        return text.append('\n').toString();
+    }
+
+    static byte[] readAll(final InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        in.close();
+        return bytes.toByteArray();
+    }
+
+    private static void respond(final HttpExchange exchange, final int code,
+            final String text) throws IOException {
+        byte[] bytes = text.getBytes(UTF8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    /*
+     * A GET handler returning a text.
+     */
+    private abstract static class TextHandler implements HttpHandler {
+
+        abstract String text();
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            readAll(exchange.getRequestBody());
+            respond(exchange, 200, text());
+        }
+    }
+
+    /*
+     * The rows of a request and their scores, filled by the scoring thread.
+     */
+    private static final class Request {
+
+        private final String[][] m_rows;
+
+        private final double[][] m_scores;
+
+        private final CountDownLatch m_done = new CountDownLatch(1);
+
+        private volatile Exception m_error;
+
+        Request(final String[][] rows) {
+            m_rows = rows;
+            m_scores = new double[rows.length][];
+        }
+    }
+
+    /**
+     * Starts a server.
+     *
+     * @param args the model file (a saved meka model port or an exported
+     *            scoring model), optionally the port and the maximal rows
+     *            of a micro batch.
+     * @throws Exception if the model cannot be read or the server started.
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: MekaScoringServer <model file> [port]"
+                    + " [max batch rows]");
+            System.exit(1);
+        }
+        MekaScoringModel model = MekaScoringModelReader.read(
+                new File(args[0]));
+        final MekaScoringServer server = new MekaScoringServer(model,
+                args.length > 2 ? Integer.parseInt(args[2])
+                        : DEFAULT_MAX_BATCH);
+        server.start(args.length > 1 ? Integer.parseInt(args[1])
+                : DEFAULT_PORT);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop();
+                System.out.print(server.getStatistics());
+            }
+        });
+        System.out.println("Scoring " + model.getNrLabels() + " labels of "
+                + model.getFeatureNames().length + " features on http://"
+                + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + server.getPort() + "/score");
+    }
+}
@@ -0,0 +1,132 @@
+package org.meka.knime.utils;
+
+import meka.classifiers.multilabel.BPNN;
+import no.uib.cipr.matrix.DenseMatrix;
+
+import Jama.Matrix;
+
+/**
+ * Scores a block with the forward pass of a {@link BPNN}, one matrix product
+ * (BLAS dgemm through MTJ) per layer for all rows of the block instead of one
+ * vector-matrix product per row. Like BPNN, every layer prepends the bias
+ * input 1 to its input and applies the logistic function to the product with
+ * the layer's weights; the input of the first layer are the features (the
+ * attributes after the labels). Rows with missing values are scored by the
+ * network itself.
+ *
+ * @author Fernando Benites
+ */
+public class BPNNBlockScorer implements BlockScorer {
+
+    /* The network, for rows with missing values. */
+    private final BPNN m_network;
+
+    /* The weights per layer, one row per input (the bias first) and one
+     * column per unit; copied, so retraining does not change the scorer. */
+    private final DenseMatrix[] m_weights;
+
+    /**
+     * @param network the trained network.
+     * @throws IllegalArgumentException if the network is not trained.
+     */
+    public BPNNBlockScorer(final BPNN network) {
+        Matrix[] w = network.W;
+        if (w == null || w.length == 0) {
+            throw new IllegalArgumentException("The network is not trained");
+        }
+        m_network = network;
+        m_weights = new DenseMatrix[w.length];
+        for (int k = 0; k < w.length; k++) {
+            m_weights[k] = new DenseMatrix(w[k].getArray());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double[][] score(final InstanceBlock block) throws Exception {
+        int n = block.size();
+        double[][] scores = new double[n][];
+        if (n == 0) {
+            return scores;
+        }
+        int offset = block.getInstance(0).classIndex();
+        int nrFeatures = m_weights[0].numRows() - 1;
+        double[][] values = block.getValues();
+        if (values[0].length - offset != nrFeatures) {
+            // not the data the network was trained on, fails like BPNN
+            for (int r = 0; r < n; r++) {
+                scores[r] = m_network.distributionForInstance(
+                        block.getInstance(r));
+            }
+            return scores;
+        }
+        // the input of the first layer, column major, the bias column first;
+        // rows with missing values are left at 0 and scored by the network
+        DenseMatrix a = new DenseMatrix(n, nrFeatures + 1);
+        double[] data = a.getData();
+        for (int r = 0; r < n; r++) {
+            double[] row = values[r];
+            boolean missing = false;
+            for (int f = 0; f < nrFeatures && !missing; f++) {
+                missing = Double.isNaN(row[offset + f]);
+            }
+            if (missing) {
+                scores[r] = m_network.distributionForInstance(
+                        block.getInstance(r));
+            } else {
+                for (int f = 0; f < nrFeatures; f++) {
+                    data[r + (f + 1) * n] = row[offset + f];
+                }
+            }
+        }
+        double[] y = forward(a, n);
+        int nrLabels = m_weights[m_weights.length - 1].numColumns();
+        for (int r = 0; r < n; r++) {
+            if (scores[r] == null) {
+                double[] s = new double[nrLabels];
+                for (int l = 0; l < nrLabels; l++) {
+                    s[l] = y[r + l * n];
+                }
+                scores[r] = s;
+            }
+        }
+        return scores;
+    }
+
+    /*
+     * The forward pass of n rows, the bias column of the input not yet set;
+     * returns the outputs, column major.
+     */
+    private double[] forward(final DenseMatrix input, final int n) {
+        DenseMatrix a = input;
+        for (int k = 0; k < m_weights.length; k++) {
+            double[] data = a.getData();
+            for (int r = 0; r < n; r++) {
+                data[r] = 1.0;
+            }
+            int units = m_weights[k].numColumns();
+            DenseMatrix z = new DenseMatrix(n, units);
+            a.mult(m_weights[k], z);
+            double[] zdata = z.getData();
+            if (k == m_weights.length - 1) {
+                for (int i = 0; i < zdata.length; i++) {
+                    zdata[i] = sigma(zdata[i]);
+                }
+                return zdata;
+            }
+            // the next input, the bias column followed by the activations
+            a = new DenseMatrix(n, units + 1);
+            double[] next = a.getData();
+            for (int i = 0; i < zdata.length; i++) {
+                next[n + i] = sigma(zdata[i]);
+            }
+        }
+        throw new IllegalStateException("No layers");
+    }
+
+    private static double sigma(final double z) {
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+}
@@ -0,0 +1,18 @@
+package org.meka.knime.utils;
+
+/**
+ * Scores a block of rows at once. Models that can score many rows with one
+ * matrix operation implement this directly; all others are scored row by
+ * row, see {@link BlockScorers#create(meka.classifiers.multilabel.MultiLabelClassifier)}.
+ *
+ * @author Fernando Benites
+ */
+public interface BlockScorer {
+
+    /**
+     * @param block the converted rows, the labels set to 0.
+     * @return the label scores, one array per row of the block.
+     * @throws Exception if the model fails.
+     */
+    double[][] score(InstanceBlock block) throws Exception;
+}
@@ -0,0 +1,48 @@
+package org.meka.knime.utils;
+
+import meka.classifiers.multilabel.BPNN;
+import meka.classifiers.multilabel.MultiLabelClassifier;
+
+/**
+ * Creates the {@link BlockScorer} of a classifier: the classifier itself if
+ * it scores blocks, a {@link BPNNBlockScorer} for trained BPNN networks,
+ * otherwise a scorer calling
+ * {@link MultiLabelClassifier#distributionForInstance(weka.core.Instance)}
+ * for every row.
+ *
+ * @author Fernando Benites
+ */
+public final class BlockScorers {
+
+    private BlockScorers() {
+        // utility class
+    }
+
+    /**
+     * @param classifier the trained classifier.
+     * @return the block scorer of the classifier.
+     */
+    public static BlockScorer create(final MultiLabelClassifier classifier) {
+        if (classifier instanceof BlockScorer) {
+            return (BlockScorer)classifier;
+        }
+        // subclasses may change the forward pass
+        if (classifier.getClass() == BPNN.class
+                && ((BPNN)classifier).W != null
+                && ((BPNN)classifier).W.length > 0) {
+            return new BPNNBlockScorer((BPNN)classifier);
+        }
+        return new BlockScorer() {
+            @Override
+            public double[][] score(final InstanceBlock block)
+                    throws Exception {
+                double[][] scores = new double[block.size()][];
+                for (int r = 0; r < scores.length; r++) {
+                    scores[r] = classifier.distributionForInstance(
+                            block.getInstance(r));
+                }
+                return scores;
+            }
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package org.meka.knime.utils;
+
+import org.knime.core.node.NodeLogger;
+
+import weka.core.Instances;
+
+/**
+ * The attribute summary of converted instances
+ * ({@link Instances#toSummaryString()}), computed on first request only and
+ * then kept. Data sets with more than {@link #SAMPLE_SIZE} rows are profiled
+ * on an evenly spaced sample of their rows.
+ *
+ * @author Fernando Benites
+ */
+public class DatasetProfile {
+
+    /** Maximal number of rows profiled. */
+    public static final int SAMPLE_SIZE = 10000;
+
+    /* The profiled instances. */
+    private final Instances m_data;
+
+    /* The rendered profile, null until requested. */
+    private String m_profile;
+
+    /**
+     * @param data the instances, only read when the profile is requested.
+     */
+    public DatasetProfile(final Instances data) {
+        m_data = data;
+    }
+
+    /**
+     * Logs the profile at debug level, computing it only if debug messages
+     * are logged.
+     *
+     * @param logger the logger.
+     */
+    public void debug(final NodeLogger logger) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(this);
+        }
+    }
+
+    /**
+     * Logs the profile at info level, computing it only if info messages are
+     * logged.
+     *
+     * @param logger the logger.
+     */
+    public void info(final NodeLogger logger) {
+        if (logger.isInfoEnabled()) {
+            logger.info(this);
+        }
+    }
+
+    /**
+     * @return the profile, computed on the first call.
+     */
+    @Override
+    public synchronized String toString() {
+        if (m_profile == null) {
+            int n = m_data.numInstances();
+            if (n <= SAMPLE_SIZE) {
+                m_profile = m_data.toSummaryString();
+            } else {
+                Instances sample = new Instances(m_data, SAMPLE_SIZE);
+                for (int i = 0; i < SAMPLE_SIZE; i++) {
+                    sample.add(m_data.instance((int)((long)i * n
+                            / SAMPLE_SIZE)));
+                }
+                m_profile = "Sample of " + SAMPLE_SIZE + " of " + n
+                        + " rows\n" + sample.toSummaryString();
+            }
+        }
+        return m_profile;
+    }
+}
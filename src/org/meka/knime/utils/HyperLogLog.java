@@ -0,0 +1,174 @@
+package org.meka.knime.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct elements with constant
+ * memory. The elements are given as 64 bit hashes; sketches with the same
+ * precision can be merged.
+ *
+ * @author Fernando Benites
+ */
+public class HyperLogLog {
+
+    /** Smallest supported precision. */
+    public static final int MIN_PRECISION = 4;
+
+    /** Largest supported precision (256 KB of registers). */
+    public static final int MAX_PRECISION = 18;
+
+    /* Number of index bits, the sketch has 2^m_precision registers. */
+    private final int m_precision;
+
+    /* The registers, the maximal rank seen per bucket. */
+    private final byte[] m_registers;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision the number of index bits, between
+     *            {@link #MIN_PRECISION} and {@link #MAX_PRECISION}.
+     */
+    public HyperLogLog(final int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between "
+                    + MIN_PRECISION + " and " + MAX_PRECISION + ": "
+                    + precision);
+        }
+        m_precision = precision;
+        m_registers = new byte[1 << precision];
+    }
+
+    /**
+     * @param relativeError the requested relative standard error, e.g. 0.01.
+     * @return the smallest precision reaching the error (1.04 / sqrt(m)),
+     *         limited to the supported range.
+     */
+    public static int precisionFor(final double relativeError) {
+        double m = (1.04 / relativeError) * (1.04 / relativeError);
+        int p = MIN_PRECISION;
+        while (p < MAX_PRECISION && (1 << p) < m) {
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * @return the number of index bits.
+     */
+    public int getPrecision() {
+        return m_precision;
+    }
+
+    /**
+     * @return the relative standard error of the estimate.
+     */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(m_registers.length);
+    }
+
+    /**
+     * Adds an element.
+     *
+     * @param hash a well mixed 64 bit hash of the element.
+     */
+    public void add(final long hash) {
+        int index = (int)(hash >>> (64 - m_precision));
+        // rank of the first set bit of the remaining bits, the appended one
+        // bit bounds the rank for hashes with only zeros left
+        long rest = (hash << m_precision) | (1L << (m_precision - 1));
+        byte rank = (byte)(Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > m_registers[index]) {
+            m_registers[index] = rank;
+        }
+    }
+
+    /**
+     * Adds all elements of the other sketch.
+     *
+     * @param other a sketch with the same precision.
+     */
+    public void merge(final HyperLogLog other) {
+        if (other.m_precision != m_precision) {
+            throw new IllegalArgumentException(
+                    "Sketches of different precision can not be merged");
+        }
+        for (int i = 0; i < m_registers.length; i++) {
+            if (other.m_registers[i] > m_registers[i]) {
+                m_registers[i] = other.m_registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct elements.
+     */
+    public double estimate() {
+        int m = m_registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : m_registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * (double)m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // small range correction: linear counting
+            estimate = m * Math.log(m / (double)zeros);
+        }
+        return estimate;
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        Arrays.fill(m_registers, (byte)0);
+    }
+
+    /**
+     * Writes the precision and the registers.
+     *
+     * @param out the output.
+     * @throws IOException if the output fails.
+     */
+    public void save(final DataOutput out) throws IOException {
+        out.writeByte(m_precision);
+        out.write(m_registers);
+    }
+
+    /**
+     * Reads a sketch written by {@link #save(DataOutput)}.
+     *
+     * @param in the input.
+     * @return the sketch.
+     * @throws IOException if the input fails.
+     */
+    public static HyperLogLog load(final DataInput in) throws IOException {
+        int precision = in.readByte();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException("Invalid sketch precision: " + precision);
+        }
+        HyperLogLog hll = new HyperLogLog(precision);
+        in.readFully(hll.m_registers);
+        return hll;
+    }
+
+    private static double alpha(final int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
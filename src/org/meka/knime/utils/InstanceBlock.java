@@ -0,0 +1,154 @@
+package org.meka.knime.utils;
+
+import org.knime.base.data.util.DataCellStringMapper;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.RowKey;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * A block of converted rows scored together by a {@link BlockScorer}. Every
+ * slot holds a {@link ReusableInstance}, so filling the block again does not
+ * allocate; the true labels are read and the labels set to 0 (as in
+ * {@link meka.classifiers.multilabel.Evaluation#testClassifier}) while a row
+ * is added.
+ *
+ * @author Fernando Benites
+ */
+public class InstanceBlock {
+
+    /** Default number of rows per block. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /* The instances, one per slot. */
+    private final ReusableInstance[] m_instances;
+
+    /* The values of the instances, the rows of the block matrix. */
+    private final double[][] m_values;
+
+    /* The row keys. */
+    private final RowKey[] m_keys;
+
+    /* The true labels, one array per slot. */
+    private final int[][] m_truth;
+
+    /* Number of labels, the first attributes. */
+    private final int m_nrLabels;
+
+    /* Number of rows in the block. */
+    private int m_size;
+
+    /**
+     * @param header the instances the rows are converted for, the class
+     *            index is the number of labels.
+     * @param capacity the maximal number of rows.
+     */
+    public InstanceBlock(final Instances header, final int capacity) {
+        m_nrLabels = header.classIndex();
+        m_instances = new ReusableInstance[capacity];
+        m_values = new double[capacity][];
+        m_keys = new RowKey[capacity];
+        m_truth = new int[capacity][m_nrLabels];
+        for (int r = 0; r < capacity; r++) {
+            m_instances[r] = new ReusableInstance(header);
+            m_values[r] = m_instances[r].getValues();
+        }
+    }
+
+    /**
+     * Converts a row into the next slot.
+     *
+     * @param row the row.
+     * @param mapper maps the string cells to the weka strings.
+     * @param order the column of the row for every attribute, -1 if missing.
+     * @param readTruth true if the label columns hold the true labels.
+     * @return the converted instance, its labels set to 0.
+     */
+    public Instance add(final DataRow row, final DataCellStringMapper mapper,
+            final int[] order, final boolean readTruth) {
+        ReusableInstance x = m_instances[m_size];
+        MekaConverter.convertInto(row, x, mapper, order);
+        int[] truth = m_truth[m_size];
+        for (int l = 0; l < m_nrLabels; l++) {
+            truth[l] = !readTruth || x.isMissing(l) ? 0
+                    : (int)Math.round(x.value(l));
+            // the labels are unknown to the classifier
+            x.setValue(l, 0.0);
+        }
+        m_keys[m_size] = row.getKey();
+        m_size++;
+        return x;
+    }
+
+    /**
+     * Copies a row of another block over the same header into the next slot.
+     *
+     * @param source the other block.
+     * @param r the row index in the other block.
+     */
+    public void add(final InstanceBlock source, final int r) {
+        System.arraycopy(source.m_values[r], 0, m_values[m_size], 0,
+                m_values[m_size].length);
+        m_instances[m_size].setWeight(source.m_instances[r].weight());
+        System.arraycopy(source.m_truth[r], 0, m_truth[m_size], 0, m_nrLabels);
+        m_keys[m_size] = source.m_keys[r];
+        m_size++;
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * @return true if no further row fits.
+     */
+    public boolean isFull() {
+        return m_size == m_instances.length;
+    }
+
+    /**
+     * Removes all rows, the slots are reused.
+     */
+    public void clear() {
+        m_size = 0;
+    }
+
+    /**
+     * @param r the row index.
+     * @return the converted instance of the row, overwritten after
+     *         {@link #clear()}.
+     */
+    public Instance getInstance(final int r) {
+        return m_instances[r];
+    }
+
+    /**
+     * The block as a dense matrix: row r holds the attribute values of row r,
+     * the first {@link #size()} rows are valid.
+     *
+     * @return the rows of the matrix, must not be modified.
+     */
+    public double[][] getValues() {
+        return m_values;
+    }
+
+    /**
+     * @param r the row index.
+     * @return the key of the row.
+     */
+    public RowKey getKey(final int r) {
+        return m_keys[r];
+    }
+
+    /**
+     * @param r the row index.
+     * @return the true labels of the row, all 0 if not read.
+     */
+    public int[] getTruth(final int r) {
+        return m_truth[r];
+    }
+}
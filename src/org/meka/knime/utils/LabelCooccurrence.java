@@ -0,0 +1,138 @@
+package org.meka.knime.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pairwise co-occurrence counts of labels: the number of rows with both
+ * labels set, for every pair of distinct labels (the upper triangle without
+ * the diagonal). One matrix is shared by all partial statistics of a table;
+ * they add the co-occurrences of their 64 row slices concurrently, each label
+ * row of the triangle guarded by one of a fixed number of locks.
+ *
+ * @author Fernando Benites
+ */
+public final class LabelCooccurrence {
+
+    /* Number of locks, the label rows are striped over them. */
+    private static final int NR_LOCKS = 64;
+
+    /**
+     * Maximal number of labels: the L (L - 1) / 2 counts of the triangle must
+     * fit into one array (at most Integer.MAX_VALUE - 8 elements).
+     */
+    public static final int MAX_LABELS = 65536;
+
+    /* Number of labels. */
+    private final int m_nrLabels;
+
+    /* Rows with both labels set, upper triangle without the diagonal. */
+    private final long[] m_counts;
+
+    /* Guard the label rows of the triangle. */
+    private final Object[] m_locks;
+
+    /**
+     * @param nrLabels the number of labels.
+     * @throws IllegalArgumentException if there are more than
+     *             {@link #MAX_LABELS} labels.
+     */
+    public LabelCooccurrence(final int nrLabels) {
+        if (nrLabels > MAX_LABELS) {
+            throw new IllegalArgumentException("The co-occurrences of "
+                    + nrLabels + " labels can not be counted, at most "
+                    + MAX_LABELS + " labels are supported");
+        }
+        m_nrLabels = nrLabels;
+        m_counts = new long[(int)((long)nrLabels * (nrLabels - 1) / 2)];
+        m_locks = new Object[Math.max(1, Math.min(NR_LOCKS, nrLabels))];
+        for (int i = 0; i < m_locks.length; i++) {
+            m_locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Adds the co-occurrences of a slice of at most 64 rows, transposed into
+     * one word per label. Thread safe.
+     *
+     * @param columns per label the rows of the slice with the label set.
+     * @param active the labels set in the slice, reordered.
+     * @param nrActive the number of labels set in the slice.
+     */
+    void add(final long[] columns, final int[] active, final int nrActive) {
+        // ascending, so that every pair is added to the row of its first
+        // label
+        Arrays.sort(active, 0, nrActive);
+        for (int a = 0; a < nrActive - 1; a++) {
+            int i = active[a];
+            long ci = columns[i];
+            synchronized (m_locks[i % m_locks.length]) {
+                for (int b = a + 1; b < nrActive; b++) {
+                    int j = active[b];
+                    m_counts[index(i, j)] += Long.bitCount(ci & columns[j]);
+                }
+            }
+        }
+    }
+
+    /* Index of (i, j), i < j, in the upper triangle; the product exceeds
+     * the int range for more than 46341 labels. */
+    private int index(final int i, final int j) {
+        return (int)((long)i * (2 * m_nrLabels - i - 1) / 2 + (j - i - 1));
+    }
+
+    /**
+     * Adds the counts of other (disjoint) rows.
+     *
+     * @param other counts over the same labels.
+     */
+    public void merge(final LabelCooccurrence other) {
+        for (int i = 0; i < m_counts.length; i++) {
+            m_counts[i] += other.m_counts[i];
+        }
+    }
+
+    /**
+     * @param i the index of the first label.
+     * @param j the index of the second, different label.
+     * @return the number of rows with both labels set.
+     */
+    public long get(final int i, final int j) {
+        return m_counts[index(Math.min(i, j), Math.max(i, j))];
+    }
+
+    /**
+     * @return the number of labels.
+     */
+    public int getNrLabels() {
+        return m_nrLabels;
+    }
+
+    /**
+     * @param out the output.
+     * @throws IOException if the output fails.
+     */
+    void save(final DataOutput out) throws IOException {
+        // mostly small counts
+        for (long c : m_counts) {
+            LabelsetStatistics.writeVarLong(out, c);
+        }
+    }
+
+    /**
+     * @param nrLabels the number of labels.
+     * @param in the input.
+     * @return the counts written by {@link #save(DataOutput)}.
+     * @throws IOException if the input fails.
+     */
+    static LabelCooccurrence load(final int nrLabels, final DataInput in)
+            throws IOException {
+        LabelCooccurrence cooccurrence = new LabelCooccurrence(nrLabels);
+        for (int i = 0; i < cooccurrence.m_counts.length; i++) {
+            cooccurrence.m_counts[i] = LabelsetStatistics.readVarLong(in);
+        }
+        return cooccurrence;
+    }
+}
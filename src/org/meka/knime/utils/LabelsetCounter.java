@@ -0,0 +1,276 @@
+package org.meka.knime.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Counts distinct label sets. Each label set is packed into a fixed number of
+ * <code>long</code> words (one bit per label) and stored in a flat
+ * open-addressing hash table, so no objects are created per row or per
+ * distinct label set.
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetCounter {
+
+    /* Maximum fill ratio of the table before it is doubled. */
+    private static final double LOAD_FACTOR = 0.5;
+
+    /* Number of long words per label set. */
+    private final int m_words;
+
+    /* The packed keys, m_words consecutive entries per slot. */
+    private long[] m_keys;
+
+    /* The count per slot, 0 marks an empty slot. */
+    private long[] m_counts;
+
+    /* Number of occupied slots. */
+    private int m_size;
+
+    /* Capacity - 1, the capacity is always a power of two. */
+    private int m_mask;
+
+    /**
+     * Creates an empty counter for label sets over the given number of
+     * labels.
+     *
+     * @param nrLabels the number of labels (bits) per label set.
+     */
+    public LabelsetCounter(final int nrLabels) {
+        this(nrLabels, 16);
+    }
+
+    /**
+     * Creates an empty counter for label sets over the given number of
+     * labels.
+     *
+     * @param nrLabels the number of labels (bits) per label set.
+     * @param expected the expected number of distinct label sets.
+     */
+    public LabelsetCounter(final int nrLabels, final int expected) {
+        m_words = wordsFor(nrLabels);
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @param nrLabels the number of labels.
+     * @return the number of long words needed to hold a label set.
+     */
+    public static int wordsFor(final int nrLabels) {
+        return Math.max(1, (nrLabels + 63) >>> 6);
+    }
+
+    /**
+     * @return the number of long words per label set.
+     */
+    public int getWords() {
+        return m_words;
+    }
+
+    /**
+     * Adds one occurrence of the label set.
+     *
+     * @param key the packed label set, at least {@link #getWords()} long.
+     */
+    public void add(final long[] key) {
+        add(key, 0, 1);
+    }
+
+    /**
+     * Adds occurrences of the label set stored at the given offset.
+     *
+     * @param key array holding the packed label set.
+     * @param offset the offset of the label set in the array.
+     * @param count the number of occurrences to add (must be positive).
+     */
+    public void add(final long[] key, final int offset, final long count) {
+        if ((m_size + 1) > (m_mask + 1) * LOAD_FACTOR) {
+            rehash((m_mask + 1) << 1);
+        }
+        int slot = hash(key, offset) & m_mask;
+        while (m_counts[slot] != 0) {
+            if (equalsAt(slot, key, offset)) {
+                m_counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & m_mask;
+        }
+        System.arraycopy(key, offset, m_keys, slot * m_words, m_words);
+        m_counts[slot] = count;
+        m_size++;
+    }
+
+    /**
+     * @param key the packed label set.
+     * @return the number of occurrences of the label set, 0 if never added.
+     */
+    public long get(final long[] key) {
+        int slot = hash(key, 0) & m_mask;
+        while (m_counts[slot] != 0) {
+            if (equalsAt(slot, key, 0)) {
+                return m_counts[slot];
+            }
+            slot = (slot + 1) & m_mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Adds all label sets of the other counter to this one.
+     *
+     * @param other a counter over the same number of words.
+     */
+    public void merge(final LabelsetCounter other) {
+        if (other.m_words != m_words) {
+            throw new IllegalArgumentException(
+                    "Label set counters of different width can not be merged");
+        }
+        for (int slot = 0; slot < other.m_counts.length; slot++) {
+            if (other.m_counts[slot] != 0) {
+                add(other.m_keys, slot * m_words, other.m_counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct label sets.
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * @return the number of slots; use with {@link #countAt(int)} and
+     *         {@link #keyAt(int, long[])} to iterate the label sets.
+     */
+    public int capacity() {
+        return m_counts.length;
+    }
+
+    /**
+     * @param slot a slot index smaller than {@link #capacity()}.
+     * @return the count of the label set in the slot, 0 for an empty slot.
+     */
+    public long countAt(final int slot) {
+        return m_counts[slot];
+    }
+
+    /**
+     * Copies the label set of a slot.
+     *
+     * @param slot a non-empty slot index.
+     * @param dest array receiving {@link #getWords()} words.
+     */
+    public void keyAt(final int slot, final long[] dest) {
+        System.arraycopy(m_keys, slot * m_words, dest, 0, m_words);
+    }
+
+    /**
+     * Removes all label sets.
+     */
+    public void clear() {
+        Arrays.fill(m_counts, 0);
+        m_size = 0;
+    }
+
+    /**
+     * Writes the label sets and their counts.
+     *
+     * @param out the output.
+     * @throws IOException if the output fails.
+     */
+    public void save(final DataOutput out) throws IOException {
+        out.writeInt(m_size);
+        for (int slot = 0; slot < m_counts.length; slot++) {
+            if (m_counts[slot] != 0) {
+                for (int w = 0; w < m_words; w++) {
+                    out.writeLong(m_keys[slot * m_words + w]);
+                }
+                out.writeLong(m_counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Reads label sets written by {@link #save(DataOutput)}.
+     *
+     * @param nrLabels the number of labels (bits) per label set.
+     * @param in the input.
+     * @return the counter.
+     * @throws IOException if the input fails.
+     */
+    public static LabelsetCounter load(final int nrLabels, final DataInput in)
+            throws IOException {
+        int size = in.readInt();
+        LabelsetCounter counter = new LabelsetCounter(nrLabels, size);
+        long[] key = new long[counter.m_words];
+        for (int i = 0; i < size; i++) {
+            for (int w = 0; w < key.length; w++) {
+                key[w] = in.readLong();
+            }
+            counter.add(key, 0, in.readLong());
+        }
+        return counter;
+    }
+
+    /**
+     * 64 bit mix of the key words (finalizer of MurmurHash3).
+     *
+     * @param key array holding the packed label set.
+     * @param offset the offset of the label set in the array.
+     * @param words the number of words of the label set.
+     * @return the hash of the label set.
+     */
+    public static long hash64(final long[] key, final int offset,
+            final int words) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int w = 0; w < words; w++) {
+            h ^= key[offset + w];
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+        }
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private int hash(final long[] key, final int offset) {
+        return (int)hash64(key, offset, m_words);
+    }
+
+    private boolean equalsAt(final int slot, final long[] key,
+            final int offset) {
+        int base = slot * m_words;
+        for (int w = 0; w < m_words; w++) {
+            if (m_keys[base + w] != key[offset + w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void allocate(final int capacity) {
+        m_keys = new long[capacity * m_words];
+        m_counts = new long[capacity];
+        m_mask = capacity - 1;
+        m_size = 0;
+    }
+
+    private void rehash(final int capacity) {
+        long[] oldKeys = m_keys;
+        long[] oldCounts = m_counts;
+        allocate(capacity);
+        for (int slot = 0; slot < oldCounts.length; slot++) {
+            if (oldCounts[slot] != 0) {
+                add(oldKeys, slot * m_words, oldCounts[slot]);
+            }
+        }
+    }
+}
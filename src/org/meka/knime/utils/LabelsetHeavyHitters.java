@@ -0,0 +1,378 @@
+package org.meka.knime.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Space-Saving sketch of the most frequent label sets. At most a fixed number
+ * of label sets is monitored; when a new label set arrives and the sketch is
+ * full, it replaces the label set with the smallest count and inherits that
+ * count as its error. Every count is an upper bound which exceeds the true
+ * count by at most the stored error, and the error is at most
+ * <code>rows / capacity</code>. Sketches with the same capacity can be merged
+ * without losing this guarantee.
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetHeavyHitters {
+
+    /* Number of long words per label set. */
+    private final int m_words;
+
+    /* Maximal number of monitored label sets. */
+    private final int m_capacity;
+
+    /* The monitored label sets, m_words entries per entry. */
+    private final long[] m_keys;
+
+    /* The (overestimated) count per entry. */
+    private final long[] m_counts;
+
+    /* The maximal overestimation per entry. */
+    private final long[] m_errors;
+
+    /* Number of used entries. */
+    private int m_size;
+
+    /* Min heap of the entries by count. */
+    private final int[] m_heap;
+
+    /* Position of each entry in the heap. */
+    private final int[] m_pos;
+
+    /* Hash index from label set to entry + 1, 0 marks an empty slot. */
+    private final int[] m_index;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param nrLabels the number of labels (bits) per label set.
+     * @param capacity the number of label sets to monitor.
+     */
+    public LabelsetHeavyHitters(final int nrLabels, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Capacity must be positive: " + capacity);
+        }
+        m_words = LabelsetCounter.wordsFor(nrLabels);
+        m_capacity = capacity;
+        m_keys = new long[capacity * m_words];
+        m_counts = new long[capacity];
+        m_errors = new long[capacity];
+        m_heap = new int[capacity];
+        m_pos = new int[capacity];
+        int slots = 4;
+        while (slots < 2 * capacity) {
+            slots <<= 1;
+        }
+        m_index = new int[slots];
+        m_size = 0;
+    }
+
+    /**
+     * @param relativeError the maximal error of a count relative to the
+     *            number of rows, e.g. 0.001.
+     * @return the capacity guaranteeing this error.
+     */
+    public static int capacityFor(final double relativeError) {
+        return (int)Math.min(Integer.MAX_VALUE / 8,
+                Math.ceil(1.0 / relativeError));
+    }
+
+    /**
+     * @return the maximal number of monitored label sets.
+     */
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * @return the number of monitored label sets.
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * @return the largest count an unmonitored label set can have.
+     */
+    public long getMinCount() {
+        return m_size < m_capacity ? 0 : m_counts[m_heap[0]];
+    }
+
+    /**
+     * Adds occurrences of the label set stored at the given offset.
+     *
+     * @param key array holding the packed label set.
+     * @param offset the offset of the label set in the array.
+     * @param count the number of occurrences to add.
+     */
+    public void add(final long[] key, final int offset, final long count) {
+        add(key, offset, count, 0, getMinCount());
+    }
+
+    /*
+     * Adds count/error to the label set, an unmonitored label set starts
+     * with the given base count as count and error.
+     */
+    private void add(final long[] key, final int offset, final long count,
+            final long error, final long base) {
+        int entry = find(key, offset);
+        if (entry >= 0) {
+            m_counts[entry] += count;
+            m_errors[entry] += error;
+            siftDown(m_pos[entry]);
+            return;
+        }
+        if (m_size < m_capacity) {
+            entry = m_size++;
+            System.arraycopy(key, offset, m_keys, entry * m_words, m_words);
+            m_counts[entry] = base + count;
+            m_errors[entry] = base + error;
+            insertIndex(entry);
+            m_heap[entry] = entry;
+            m_pos[entry] = entry;
+            siftUp(entry);
+            return;
+        }
+        // replace the label set with the smallest count
+        entry = m_heap[0];
+        long min = m_counts[entry];
+        removeIndex(entry);
+        System.arraycopy(key, offset, m_keys, entry * m_words, m_words);
+        m_counts[entry] = Math.max(min, base) + count;
+        m_errors[entry] = Math.max(min, base) + error;
+        insertIndex(entry);
+        siftDown(0);
+    }
+
+    /**
+     * Adds the label sets of another sketch over disjoint rows. A label set
+     * missing in one sketch is counted with the smallest count of that
+     * sketch, so the counts stay upper bounds.
+     *
+     * @param other a sketch with the same capacity and number of words.
+     */
+    public void merge(final LabelsetHeavyHitters other) {
+        if (other.m_words != m_words || other.m_capacity != m_capacity) {
+            throw new IllegalArgumentException(
+                    "Heavy hitter sketches of different size can not be "
+                            + "merged");
+        }
+        final int n = m_size + other.m_size;
+        final long[] keys = new long[n * m_words];
+        final long[] counts = new long[n];
+        final long[] errors = new long[n];
+        long min = getMinCount();
+        long otherMin = other.getMinCount();
+        int c = 0;
+        for (int e = 0; e < m_size; e++) {
+            int o = other.find(m_keys, e * m_words);
+            System.arraycopy(m_keys, e * m_words, keys, c * m_words, m_words);
+            counts[c] = m_counts[e] + (o >= 0 ? other.m_counts[o] : otherMin);
+            errors[c] = m_errors[e] + (o >= 0 ? other.m_errors[o] : otherMin);
+            c++;
+        }
+        for (int o = 0; o < other.m_size; o++) {
+            if (find(other.m_keys, o * m_words) < 0) {
+                System.arraycopy(other.m_keys, o * m_words, keys, c * m_words,
+                        m_words);
+                counts[c] = other.m_counts[o] + min;
+                errors[c] = other.m_errors[o] + min;
+                c++;
+            }
+        }
+        // keep the label sets with the largest counts
+        Integer[] order = new Integer[c];
+        for (int i = 0; i < c; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                return Long.compare(counts[b], counts[a]);
+            }
+        });
+        clear();
+        for (int i = 0; i < Math.min(c, m_capacity); i++) {
+            int src = order[i];
+            add(keys, src * m_words, counts[src], errors[src], 0);
+        }
+    }
+
+    /**
+     * @param entry an entry index smaller than {@link #size()}.
+     * @return the upper bound of the count of the entry.
+     */
+    public long countAt(final int entry) {
+        return m_counts[entry];
+    }
+
+    /**
+     * @param entry an entry index smaller than {@link #size()}.
+     * @return the maximal overestimation of the count of the entry.
+     */
+    public long errorAt(final int entry) {
+        return m_errors[entry];
+    }
+
+    /**
+     * Copies the label set of an entry.
+     *
+     * @param entry an entry index smaller than {@link #size()}.
+     * @param dest array receiving the words of the label set.
+     */
+    public void keyAt(final int entry, final long[] dest) {
+        System.arraycopy(m_keys, entry * m_words, dest, 0, m_words);
+    }
+
+    /**
+     * Removes all label sets.
+     */
+    public void clear() {
+        Arrays.fill(m_index, 0);
+        m_size = 0;
+    }
+
+    /**
+     * Writes the capacity and the monitored label sets.
+     *
+     * @param out the output.
+     * @throws IOException if the output fails.
+     */
+    public void save(final DataOutput out) throws IOException {
+        out.writeInt(m_capacity);
+        out.writeInt(m_size);
+        for (int e = 0; e < m_size; e++) {
+            for (int w = 0; w < m_words; w++) {
+                out.writeLong(m_keys[e * m_words + w]);
+            }
+            out.writeLong(m_counts[e]);
+            out.writeLong(m_errors[e]);
+        }
+    }
+
+    /**
+     * Reads a sketch written by {@link #save(DataOutput)}.
+     *
+     * @param nrLabels the number of labels (bits) per label set.
+     * @param in the input.
+     * @return the sketch.
+     * @throws IOException if the input fails.
+     */
+    public static LabelsetHeavyHitters load(final int nrLabels,
+            final DataInput in) throws IOException {
+        LabelsetHeavyHitters hh =
+                new LabelsetHeavyHitters(nrLabels, in.readInt());
+        int size = in.readInt();
+        long[] key = new long[hh.m_words];
+        for (int e = 0; e < size; e++) {
+            for (int w = 0; w < key.length; w++) {
+                key[w] = in.readLong();
+            }
+            long count = in.readLong();
+            hh.add(key, 0, count, in.readLong(), 0);
+        }
+        return hh;
+    }
+
+    private int find(final long[] key, final int offset) {
+        int mask = m_index.length - 1;
+        int slot = (int)LabelsetCounter.hash64(key, offset, m_words) & mask;
+        while (m_index[slot] != 0) {
+            int entry = m_index[slot] - 1;
+            if (equalsAt(entry, key, offset)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean equalsAt(final int entry, final long[] key,
+            final int offset) {
+        int base = entry * m_words;
+        for (int w = 0; w < m_words; w++) {
+            if (m_keys[base + w] != key[offset + w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int home(final int entry) {
+        return (int)LabelsetCounter.hash64(m_keys, entry * m_words, m_words)
+                & (m_index.length - 1);
+    }
+
+    private void insertIndex(final int entry) {
+        int mask = m_index.length - 1;
+        int slot = home(entry);
+        while (m_index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        m_index[slot] = entry + 1;
+    }
+
+    /* Removes the entry from the index by backward shift deletion. */
+    private void removeIndex(final int entry) {
+        int mask = m_index.length - 1;
+        int slot = home(entry);
+        while (m_index[slot] != entry + 1) {
+            slot = (slot + 1) & mask;
+        }
+        int next = (slot + 1) & mask;
+        while (m_index[next] != 0) {
+            int h = home(m_index[next] - 1);
+            // move the entry back if its home is not in (slot, next]
+            if (((next - h) & mask) >= ((next - slot) & mask)) {
+                m_index[slot] = m_index[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        m_index[slot] = 0;
+    }
+
+    private void siftUp(final int pos) {
+        int p = pos;
+        int entry = m_heap[p];
+        while (p > 0) {
+            int parent = (p - 1) >>> 1;
+            if (m_counts[m_heap[parent]] <= m_counts[entry]) {
+                break;
+            }
+            m_heap[p] = m_heap[parent];
+            m_pos[m_heap[p]] = p;
+            p = parent;
+        }
+        m_heap[p] = entry;
+        m_pos[entry] = p;
+    }
+
+    private void siftDown(final int pos) {
+        int p = pos;
+        int entry = m_heap[p];
+        while (true) {
+            int child = 2 * p + 1;
+            if (child >= m_size) {
+                break;
+            }
+            if (child + 1 < m_size
+                    && m_counts[m_heap[child + 1]] < m_counts[m_heap[child]]) {
+                child++;
+            }
+            if (m_counts[entry] <= m_counts[m_heap[child]]) {
+                break;
+            }
+            m_heap[p] = m_heap[child];
+            m_pos[m_heap[p]] = p;
+            p = child;
+        }
+        m_heap[p] = entry;
+        m_pos[entry] = p;
+    }
+}
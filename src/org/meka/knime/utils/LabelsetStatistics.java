@@ -0,0 +1,591 @@
+package org.meka.knime.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Mergeable label set statistics of a set of rows: number of rows, number of
+ * set labels, the rows per label, optionally the pairwise label
+ * co-occurrence counts, and the distinct label sets with their counts.
+ * Partial statistics of disjoint row ranges can be computed independently
+ * and merged afterwards.
+ * <p>
+ * In approximate mode the distinct label sets are not stored; their number is
+ * estimated with a {@link HyperLogLog} sketch and the most frequent label sets
+ * are tracked with a {@link LabelsetHeavyHitters} sketch, so the memory does
+ * not grow with the number of distinct label sets. The co-occurrence matrix
+ * grows with the square of the number of labels; it is only allocated if
+ * requested, and shared by the partial statistics of a table (see
+ * {@link #createPartial()}).
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetStatistics {
+
+    /* Version of the binary format of save/load. */
+    private static final int FORMAT_VERSION = 1;
+
+    /* Number of labels per label set. */
+    private final int m_nrLabels;
+
+    /* Number of long words per packed label set. */
+    private final int m_words;
+
+    /* Number of rows seen. */
+    private long m_nrRows;
+
+    /* Number of set labels over all rows. */
+    private long m_nrLabelsSet;
+
+    /* Number of rows with the label set, per label. */
+    private final long[] m_labelCounts;
+
+    /* Rows with both labels set, null if not computed. */
+    private final LabelCooccurrence m_cooccurrence;
+
+    /* Per label the rows of the current 64 row slice, scratch of addBlock. */
+    private final long[] m_columns;
+
+    /* The labels set in the current slice, scratch of addBlock. */
+    private final int[] m_active;
+
+    /* The distinct label sets, null in approximate mode. */
+    private final LabelsetCounter m_labelsets;
+
+    /* Distinct label set estimate, null in exact mode. */
+    private final HyperLogLog m_distinct;
+
+    /* Most frequent label sets, null in exact mode. */
+    private final LabelsetHeavyHitters m_frequent;
+
+    /**
+     * Creates empty exact statistics without co-occurrence counts.
+     *
+     * @param nrLabels the number of labels.
+     */
+    public LabelsetStatistics(final int nrLabels) {
+        this(nrLabels, false);
+    }
+
+    /**
+     * Creates empty exact statistics.
+     *
+     * @param nrLabels the number of labels.
+     * @param cooccurrence true to count the pairwise label co-occurrences.
+     */
+    public LabelsetStatistics(final int nrLabels, final boolean cooccurrence) {
+        this(nrLabels, new LabelsetCounter(nrLabels), null, null,
+                cooccurrence ? new LabelCooccurrence(nrLabels) : null);
+    }
+
+    /**
+     * Creates empty approximate statistics.
+     *
+     * @param nrLabels the number of labels.
+     * @param distinctError the relative standard error of the number of
+     *            distinct label sets.
+     * @param frequencyError the maximal error of a label set count relative
+     *            to the number of rows.
+     * @param cooccurrence true to count the pairwise label co-occurrences.
+     */
+    public LabelsetStatistics(final int nrLabels, final double distinctError,
+            final double frequencyError, final boolean cooccurrence) {
+        this(nrLabels, null,
+                new HyperLogLog(HyperLogLog.precisionFor(distinctError)),
+                new LabelsetHeavyHitters(nrLabels,
+                        LabelsetHeavyHitters.capacityFor(frequencyError)),
+                cooccurrence ? new LabelCooccurrence(nrLabels) : null);
+    }
+
+    private LabelsetStatistics(final int nrLabels,
+            final LabelsetCounter labelsets, final HyperLogLog distinct,
+            final LabelsetHeavyHitters frequent,
+            final LabelCooccurrence cooccurrence) {
+        m_nrLabels = nrLabels;
+        m_words = LabelsetCounter.wordsFor(nrLabels);
+        m_labelCounts = new long[nrLabels];
+        m_cooccurrence = cooccurrence;
+        m_columns = new long[nrLabels];
+        m_active = new int[nrLabels];
+        m_labelsets = labelsets;
+        m_distinct = distinct;
+        m_frequent = frequent;
+    }
+
+    /**
+     * @param cooccurrence true to count the pairwise label co-occurrences.
+     * @return new empty statistics of the same mode and precision.
+     */
+    public LabelsetStatistics createEmpty(final boolean cooccurrence) {
+        return create(cooccurrence ? new LabelCooccurrence(m_nrLabels) : null);
+    }
+
+    /**
+     * Creates empty statistics for other rows of the same table, adding their
+     * co-occurrences to the counts of these statistics; {@link #merge} then
+     * only adds the remaining statistics.
+     *
+     * @return new empty statistics of the same mode and precision.
+     */
+    LabelsetStatistics createPartial() {
+        return create(m_cooccurrence);
+    }
+
+    private LabelsetStatistics create(final LabelCooccurrence cooccurrence) {
+        if (m_labelsets != null) {
+            return new LabelsetStatistics(m_nrLabels,
+                    new LabelsetCounter(m_nrLabels), null, null,
+                    cooccurrence);
+        }
+        return new LabelsetStatistics(m_nrLabels, null,
+                new HyperLogLog(m_distinct.getPrecision()),
+                new LabelsetHeavyHitters(m_nrLabels,
+                        m_frequent.getCapacity()), cooccurrence);
+    }
+
+    /**
+     * Writes the statistics in a compact binary form.
+     *
+     * @param out the output.
+     * @throws IOException if the output fails.
+     */
+    public void save(final DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(m_nrLabels);
+        out.writeLong(m_nrRows);
+        out.writeLong(m_nrLabelsSet);
+        for (long c : m_labelCounts) {
+            writeVarLong(out, c);
+        }
+        out.writeBoolean(m_cooccurrence != null);
+        if (m_cooccurrence != null) {
+            m_cooccurrence.save(out);
+        }
+        out.writeBoolean(isApproximate());
+        if (m_labelsets != null) {
+            m_labelsets.save(out);
+        } else {
+            m_distinct.save(out);
+            m_frequent.save(out);
+        }
+    }
+
+    /**
+     * Reads statistics written by {@link #save(DataOutput)}.
+     *
+     * @param in the input.
+     * @return the statistics.
+     * @throws IOException if the input fails or has an unknown format.
+     */
+    public static LabelsetStatistics load(final DataInput in)
+            throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown label set statistics format: "
+                    + version);
+        }
+        int nrLabels = in.readInt();
+        long nrRows = in.readLong();
+        long nrLabelsSet = in.readLong();
+        long[] labelCounts = new long[nrLabels];
+        for (int i = 0; i < nrLabels; i++) {
+            labelCounts[i] = readVarLong(in);
+        }
+        LabelCooccurrence cooccurrence = null;
+        if (in.readBoolean()) {
+            cooccurrence = LabelCooccurrence.load(nrLabels, in);
+        }
+        LabelsetStatistics stats;
+        if (in.readBoolean()) {
+            HyperLogLog distinct = HyperLogLog.load(in);
+            stats = new LabelsetStatistics(nrLabels, null, distinct,
+                    LabelsetHeavyHitters.load(nrLabels, in), cooccurrence);
+        } else {
+            stats = new LabelsetStatistics(nrLabels,
+                    LabelsetCounter.load(nrLabels, in), null, null,
+                    cooccurrence);
+        }
+        stats.m_nrRows = nrRows;
+        stats.m_nrLabelsSet = nrLabelsSet;
+        System.arraycopy(labelCounts, 0, stats.m_labelCounts, 0, nrLabels);
+        return stats;
+    }
+
+    static void writeVarLong(final DataOutput out, final long value)
+            throws IOException {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int)v);
+    }
+
+    static long readVarLong(final DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            v |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("Malformed label set statistics");
+    }
+
+    /**
+     * @return true if the distinct label sets are estimated.
+     */
+    public boolean isApproximate() {
+        return m_labelsets == null;
+    }
+
+    /**
+     * Adds a block of packed label sets.
+     *
+     * @param labelsets the label sets, {@link LabelsetCounter#wordsFor(int)}
+     *            words per row.
+     * @param rows the number of rows in the block.
+     */
+    public void addBlock(final long[] labelsets, final int rows) {
+        int offset = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int w = 0; w < m_words; w++) {
+                m_nrLabelsSet += Long.bitCount(labelsets[offset + w]);
+            }
+            if (m_labelsets != null) {
+                m_labelsets.add(labelsets, offset, 1);
+            } else {
+                m_distinct.add(
+                        LabelsetCounter.hash64(labelsets, offset, m_words));
+                m_frequent.add(labelsets, offset, 1);
+            }
+            offset += m_words;
+        }
+        for (int start = 0; start < rows; start += 64) {
+            addCooccurrences(labelsets, start, Math.min(rows, start + 64));
+        }
+        m_nrRows += rows;
+    }
+
+    /*
+     * Transposes the rows of the slice into one word per label and counts
+     * the rows per label and, if requested, the co-occurrences of the labels
+     * set in the slice by popcount.
+     */
+    private void addCooccurrences(final long[] labelsets, final int start,
+            final int end) {
+        int nrActive = 0;
+        for (int r = start; r < end; r++) {
+            long bit = 1L << (r - start);
+            for (int w = 0; w < m_words; w++) {
+                long word = labelsets[r * m_words + w];
+                while (word != 0) {
+                    int l = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if (m_columns[l] == 0) {
+                        m_active[nrActive++] = l;
+                    }
+                    m_columns[l] |= bit;
+                    word &= word - 1;
+                }
+            }
+        }
+        for (int a = 0; a < nrActive; a++) {
+            int l = m_active[a];
+            m_labelCounts[l] += Long.bitCount(m_columns[l]);
+        }
+        if (m_cooccurrence != null) {
+            m_cooccurrence.add(m_columns, m_active, nrActive);
+        }
+        for (int a = 0; a < nrActive; a++) {
+            m_columns[m_active[a]] = 0;
+        }
+    }
+
+    /**
+     * Adds the statistics of another (disjoint) set of rows.
+     *
+     * @param other statistics over the same labels, with co-occurrence
+     *            counts if these statistics have them.
+     */
+    public void merge(final LabelsetStatistics other) {
+        if (other.m_nrLabels != m_nrLabels
+                || other.isApproximate() != isApproximate()) {
+            throw new IllegalArgumentException("Statistics over "
+                    + other.m_nrLabels + " labels can not be merged into "
+                    + "statistics over " + m_nrLabels + " labels");
+        }
+        if (m_cooccurrence != null && other.m_cooccurrence == null) {
+            throw new IllegalArgumentException("Statistics without label "
+                    + "co-occurrences can not be merged into statistics "
+                    + "with label co-occurrences");
+        }
+        m_nrRows += other.m_nrRows;
+        m_nrLabelsSet += other.m_nrLabelsSet;
+        for (int i = 0; i < m_nrLabels; i++) {
+            m_labelCounts[i] += other.m_labelCounts[i];
+        }
+        // partial statistics of a table share the counts
+        if (m_cooccurrence != null && m_cooccurrence != other.m_cooccurrence) {
+            m_cooccurrence.merge(other.m_cooccurrence);
+        }
+        if (m_labelsets != null) {
+            m_labelsets.merge(other.m_labelsets);
+        } else {
+            m_distinct.merge(other.m_distinct);
+            m_frequent.merge(other.m_frequent);
+        }
+    }
+
+    /**
+     * @param a statistics of the first set of rows.
+     * @param b statistics of the second set of rows.
+     * @param cooccurrence true to add the co-occurrence counts, which both
+     *            statistics must have.
+     * @return new statistics over both sets of rows.
+     */
+    public static LabelsetStatistics merged(final LabelsetStatistics a,
+            final LabelsetStatistics b, final boolean cooccurrence) {
+        LabelsetStatistics all = a.createEmpty(cooccurrence);
+        all.merge(a);
+        all.merge(b);
+        return all;
+    }
+
+    /**
+     * @return the number of labels.
+     */
+    public int getNrLabels() {
+        return m_nrLabels;
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public long getNrRows() {
+        return m_nrRows;
+    }
+
+    /**
+     * @return the number of set labels over all rows.
+     */
+    public long getNrLabelsSet() {
+        return m_nrLabelsSet;
+    }
+
+    /**
+     * @return the label cardinality (average number of labels per row).
+     */
+    public double getCardinality() {
+        return m_nrLabelsSet / (double)m_nrRows;
+    }
+
+    /**
+     * @return the label density, the cardinality divided by the number of
+     *         labels.
+     */
+    public double getDensity() {
+        return getCardinality() / Math.max(1, m_nrLabels);
+    }
+
+    /**
+     * @return the precision of the distinct label set sketch, 0 in exact
+     *         mode.
+     */
+    public int getSketchPrecision() {
+        return m_distinct == null ? 0 : m_distinct.getPrecision();
+    }
+
+    /**
+     * @return the capacity of the frequent label set sketch, 0 in exact
+     *         mode.
+     */
+    public int getSketchCapacity() {
+        return m_frequent == null ? 0 : m_frequent.getCapacity();
+    }
+
+    /**
+     * @param label the index of the label.
+     * @return the number of rows with the label set.
+     */
+    public long getLabelCount(final int label) {
+        return m_labelCounts[label];
+    }
+
+    /**
+     * @return true if the pairwise label co-occurrences are counted.
+     */
+    public boolean hasCooccurrence() {
+        return m_cooccurrence != null;
+    }
+
+    /**
+     * @param i the index of the first label.
+     * @param j the index of the second label.
+     * @return the number of rows with both labels set.
+     * @throws IllegalStateException if the co-occurrences are not counted.
+     */
+    public long getCooccurrence(final int i, final int j) {
+        if (i == j) {
+            return m_labelCounts[i];
+        }
+        if (m_cooccurrence == null) {
+            throw new IllegalStateException(
+                    "The label co-occurrences are not counted");
+        }
+        return m_cooccurrence.get(i, j);
+    }
+
+    /**
+     * Mutual information of two labels (in bits), computed from the 2x2
+     * contingency table of their co-occurrence.
+     *
+     * @param i the index of the first label.
+     * @param j the index of the second label.
+     * @return the mutual information, 0 for independent labels.
+     * @throws IllegalStateException if the co-occurrences are not counted.
+     */
+    public double getMutualInformation(final int i, final int j) {
+        if (m_nrRows == 0) {
+            return 0;
+        }
+        double n = m_nrRows;
+        long n11 = getCooccurrence(i, j);
+        long ni = getLabelCount(i);
+        long nj = getLabelCount(j);
+        long n10 = ni - n11;
+        long n01 = nj - n11;
+        long n00 = m_nrRows - ni - nj + n11;
+        return (term(n11, ni, nj, n) + term(n10, ni, m_nrRows - nj, n)
+                + term(n01, m_nrRows - ni, nj, n)
+                + term(n00, m_nrRows - ni, m_nrRows - nj, n))
+                / Math.log(2);
+    }
+
+    /* p(x,y) log(p(x,y) / (p(x) p(y))) from counts. */
+    private static double term(final long nxy, final long nx, final long ny,
+            final double n) {
+        if (nxy == 0) {
+            return 0;
+        }
+        return nxy / n * Math.log(nxy * n / ((double)nx * ny));
+    }
+
+    /**
+     * @return the number of distinct label sets, estimated in approximate
+     *         mode.
+     */
+    public int getNrUniqueLabelsets() {
+        if (m_labelsets != null) {
+            return m_labelsets.size();
+        }
+        return (int)Math.round(m_distinct.estimate());
+    }
+
+    /**
+     * @return the relative standard error of
+     *         {@link #getNrUniqueLabelsets()}, 0 in exact mode.
+     */
+    public double getUniqueLabelsetsError() {
+        return m_labelsets != null ? 0 : m_distinct.getRelativeError();
+    }
+
+    /**
+     * @return the distinct label sets and their counts, null in approximate
+     *         mode.
+     */
+    public LabelsetCounter getLabelsets() {
+        return m_labelsets;
+    }
+
+    /**
+     * Returns the most frequent label sets, by descending count. In
+     * approximate mode the counts are upper bounds and only label sets
+     * monitored by the sketch are returned.
+     *
+     * @param k the maximal number of label sets.
+     * @return the label sets.
+     */
+    public List<FrequentLabelset> getFrequentLabelsets(final int k) {
+        List<FrequentLabelset> list = new ArrayList<FrequentLabelset>();
+        if (m_labelsets != null) {
+            for (int slot = 0; slot < m_labelsets.capacity(); slot++) {
+                if (m_labelsets.countAt(slot) != 0) {
+                    long[] key = new long[m_words];
+                    m_labelsets.keyAt(slot, key);
+                    list.add(new FrequentLabelset(key,
+                            m_labelsets.countAt(slot), 0));
+                }
+            }
+        } else {
+            for (int e = 0; e < m_frequent.size(); e++) {
+                long[] key = new long[m_words];
+                m_frequent.keyAt(e, key);
+                list.add(new FrequentLabelset(key, m_frequent.countAt(e),
+                        m_frequent.errorAt(e)));
+            }
+        }
+        FrequentLabelset[] sorted =
+                list.toArray(new FrequentLabelset[list.size()]);
+        Arrays.sort(sorted, new Comparator<FrequentLabelset>() {
+            @Override
+            public int compare(final FrequentLabelset a,
+                    final FrequentLabelset b) {
+                return Long.compare(b.m_count, a.m_count);
+            }
+        });
+        return Arrays.asList(sorted).subList(0, Math.min(k, sorted.length));
+    }
+
+    /**
+     * A label set with its (estimated) count.
+     */
+    public static final class FrequentLabelset {
+        private final long[] m_labelset;
+
+        private final long m_count;
+
+        private final long m_error;
+
+        FrequentLabelset(final long[] labelset, final long count,
+                final long error) {
+            m_labelset = labelset;
+            m_count = count;
+            m_error = error;
+        }
+
+        /**
+         * @param label the index of the label.
+         * @return true if the label is in the label set.
+         */
+        public boolean contains(final int label) {
+            return (m_labelset[label >>> 6] & (1L << label)) != 0;
+        }
+
+        /**
+         * @return the packed label set.
+         */
+        public long[] getLabelset() {
+            return m_labelset;
+        }
+
+        /**
+         * @return the count, an upper bound in approximate mode.
+         */
+        public long getCount() {
+            return m_count;
+        }
+
+        /**
+         * @return the maximal overestimation of the count.
+         */
+        public long getError() {
+            return m_error;
+        }
+    }
+}
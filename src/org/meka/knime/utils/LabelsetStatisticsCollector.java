@@ -0,0 +1,349 @@
+package org.meka.knime.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.StringValue;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Computes {@link LabelsetStatistics} for several tables in one pass. With
+ * more than one thread, every table is read by its own reader thread which
+ * packs the label sets of consecutive rows into blocks; a pool of workers
+ * computes partial statistics over these row ranges, which are merged per
+ * table at the end. The partial statistics of a table share its label
+ * co-occurrence counts, so the matrix exists once per table.
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetStatisticsCollector {
+
+    /** Number of rows per block (a multiple of 64). */
+    static final int BLOCK_ROWS = 1024;
+
+    /* Marks the end of the input for a worker. */
+    private static final Block POISON = new Block(-1, 0);
+
+    /* The label columns. */
+    private final int[] m_labelcols;
+
+    /* Number of long words per label set. */
+    private final int m_words;
+
+    /* Number of worker threads, 1 for sequential computation. */
+    private final int m_nrThreads;
+
+    /* Empty statistics of the requested mode. */
+    private final LabelsetStatistics m_prototype;
+
+    /* Count the pairwise label co-occurrences per table. */
+    private final boolean m_cooccurrence;
+
+    /* Set if the computation is to be aborted. */
+    private volatile boolean m_stopped;
+
+    /* The first error of a reader or worker thread. */
+    private volatile Throwable m_throwable;
+
+    /**
+     * @param labelcols the indices of the label columns.
+     * @param nrThreads the number of worker threads, 1 computes everything
+     *            in the calling thread.
+     */
+    public LabelsetStatisticsCollector(final int[] labelcols,
+            final int nrThreads) {
+        this(labelcols, nrThreads,
+                new LabelsetStatistics(labelcols.length), false);
+    }
+
+    /**
+     * @param labelcols the indices of the label columns.
+     * @param nrThreads the number of worker threads, 1 computes everything
+     *            in the calling thread.
+     * @param prototype empty statistics, all statistics are created like it
+     *            (exact or approximate).
+     * @param cooccurrence true to count the pairwise label co-occurrences,
+     *            one matrix per table.
+     */
+    public LabelsetStatisticsCollector(final int[] labelcols,
+            final int nrThreads, final LabelsetStatistics prototype,
+            final boolean cooccurrence) {
+        m_labelcols = labelcols;
+        m_words = LabelsetCounter.wordsFor(labelcols.length);
+        m_nrThreads = Math.max(1, nrThreads);
+        m_prototype = prototype;
+        m_cooccurrence = cooccurrence;
+    }
+
+    /**
+     * Computes the statistics of each table.
+     *
+     * @param tables the tables to process.
+     * @param exec to report progress and check for cancellation.
+     * @return the statistics, one per table.
+     * @throws CanceledExecutionException if canceled.
+     */
+    public LabelsetStatistics[] collect(final BufferedDataTable[] tables,
+            final ExecutionMonitor exec) throws CanceledExecutionException {
+        long total = 0;
+        for (BufferedDataTable table : tables) {
+            total += table.getRowCount();
+        }
+        if (m_nrThreads == 1) {
+            return collectSequential(tables, exec, Math.max(1, total));
+        }
+        return collectParallel(tables, exec, Math.max(1, total));
+    }
+
+    private LabelsetStatistics[] collectSequential(
+            final BufferedDataTable[] tables, final ExecutionMonitor exec,
+            final long total) throws CanceledExecutionException {
+        LabelsetStatistics[] stats = createStatistics(tables.length);
+        Block block = new Block(0, BLOCK_ROWS * m_words);
+        long read = 0;
+        for (int t = 0; t < tables.length; t++) {
+            block.m_rows = 0;
+            for (DataRow row : tables[t]) {
+                pack(row, block);
+                if (block.m_rows == BLOCK_ROWS) {
+                    stats[t].addBlock(block.m_labelsets, block.m_rows);
+                    read += block.m_rows;
+                    block.m_rows = 0;
+                    exec.setProgress(read / (double)total);
+                    exec.checkCanceled();
+                }
+            }
+            stats[t].addBlock(block.m_labelsets, block.m_rows);
+            read += block.m_rows;
+        }
+        return stats;
+    }
+
+    private LabelsetStatistics[] collectParallel(
+            final BufferedDataTable[] tables, final ExecutionMonitor exec,
+            final long total) throws CanceledExecutionException {
+        final BlockingQueue<Block> queue =
+                new ArrayBlockingQueue<Block>(2 * m_nrThreads);
+        final AtomicLong read = new AtomicLong();
+        m_stopped = false;
+        m_throwable = null;
+
+        LabelsetStatistics[] stats = createStatistics(tables.length);
+        Worker[] workers = new Worker[m_nrThreads];
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = new Worker(queue, stats);
+            workers[w].start();
+        }
+        Reader[] readers = new Reader[tables.length];
+        for (int t = 0; t < tables.length; t++) {
+            readers[t] = new Reader(tables[t], t, queue, read);
+            readers[t].start();
+        }
+        try {
+            for (Reader reader : readers) {
+                while (reader.isAlive()) {
+                    reader.join(250);
+                    exec.setProgress(read.get() / (double)total);
+                    exec.checkCanceled();
+                }
+            }
+            for (int w = 0; w < workers.length; w++) {
+                queue.put(POISON);
+            }
+            for (Worker worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException ie) {
+            stop(readers, workers);
+            throw new CanceledExecutionException("Interrupted");
+        } catch (CanceledExecutionException cee) {
+            stop(readers, workers);
+            throw cee;
+        }
+        if (m_throwable != null) {
+            throw new IllegalStateException("Could not compute label set "
+                    + "statistics: " + m_throwable.getMessage(), m_throwable);
+        }
+        for (Worker worker : workers) {
+            for (int t = 0; t < tables.length; t++) {
+                stats[t].merge(worker.m_partial[t]);
+            }
+        }
+        return stats;
+    }
+
+    private LabelsetStatistics[] createStatistics(final int n) {
+        LabelsetStatistics[] stats = new LabelsetStatistics[n];
+        for (int t = 0; t < n; t++) {
+            stats[t] = m_prototype.createEmpty(m_cooccurrence);
+        }
+        return stats;
+    }
+
+    private void stop(final Thread[] readers, final Thread[] workers) {
+        m_stopped = true;
+        for (Thread t : readers) {
+            t.interrupt();
+        }
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+    }
+
+    private void fail(final Throwable th) {
+        if (m_throwable == null) {
+            m_throwable = th;
+        }
+        m_stopped = true;
+    }
+
+    /* Packs the label set of the row as the next row of the block. */
+    private void pack(final DataRow row, final Block block) {
+        int offset = block.m_rows * m_words;
+        for (int w = 0; w < m_words; w++) {
+            block.m_labelsets[offset + w] = 0L;
+        }
+        for (int l = 0; l < m_labelcols.length; l++) {
+            if (isLabelSet(row.getCell(m_labelcols[l]))) {
+                block.m_labelsets[offset + (l >>> 6)] |= 1L << l;
+            }
+        }
+        block.m_rows++;
+    }
+
+    /**
+     * @param cell a label cell.
+     * @return true if the cell is neither missing nor "0".
+     */
+    static boolean isLabelSet(final DataCell cell) {
+        if (cell.isMissing()) {
+            return false;
+        }
+        if (cell instanceof StringValue) {
+            return !"0".equals(((StringValue)cell).getStringValue());
+        }
+        if (cell instanceof DoubleValue) {
+            return ((DoubleValue)cell).getDoubleValue() != 0;
+        }
+        return false;
+    }
+
+    /* Consecutive rows of one table. */
+    private static final class Block {
+        private final int m_table;
+
+        private final long[] m_labelsets;
+
+        private int m_rows;
+
+        Block(final int table, final int size) {
+            m_table = table;
+            m_labelsets = new long[size];
+            m_rows = 0;
+        }
+    }
+
+    /* Reads a table and hands blocks of packed label sets to the workers. */
+    private final class Reader extends Thread {
+        private final BufferedDataTable m_table;
+
+        private final int m_index;
+
+        private final BlockingQueue<Block> m_queue;
+
+        private final AtomicLong m_read;
+
+        Reader(final BufferedDataTable table, final int index,
+                final BlockingQueue<Block> queue, final AtomicLong read) {
+            super("Labelset statistics reader " + index);
+            m_table = table;
+            m_index = index;
+            m_queue = queue;
+            m_read = read;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Block block = new Block(m_index, BLOCK_ROWS * m_words);
+                for (DataRow row : m_table) {
+                    if (m_stopped) {
+                        return;
+                    }
+                    pack(row, block);
+                    if (block.m_rows == BLOCK_ROWS) {
+                        put(block);
+                        block = new Block(m_index, BLOCK_ROWS * m_words);
+                    }
+                }
+                if (block.m_rows > 0) {
+                    put(block);
+                }
+            } catch (InterruptedException ie) {
+                // canceled
+            } catch (Throwable th) {
+                fail(th);
+            }
+        }
+
+        /* Waits for space in the queue unless the computation is stopped. */
+        private void put(final Block block) throws InterruptedException {
+            while (!m_stopped) {
+                if (m_queue.offer(block, 100, TimeUnit.MILLISECONDS)) {
+                    m_read.addAndGet(block.m_rows);
+                    return;
+                }
+            }
+        }
+    }
+
+    /* Computes partial statistics of the blocks it takes from the queue. */
+    private final class Worker extends Thread {
+        private final BlockingQueue<Block> m_queue;
+
+        private final LabelsetStatistics[] m_partial;
+
+        Worker(final BlockingQueue<Block> queue,
+                final LabelsetStatistics[] stats) {
+            super("Labelset statistics worker");
+            m_queue = queue;
+            m_partial = new LabelsetStatistics[stats.length];
+            for (int t = 0; t < stats.length; t++) {
+                m_partial[t] = stats[t].createPartial();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Block block;
+                try {
+                    block = m_queue.take();
+                } catch (InterruptedException ie) {
+                    // canceled
+                    return;
+                }
+                if (block == POISON) {
+                    return;
+                }
+                // after a failure the queue is still drained, so that no
+                // reader blocks forever
+                if (!m_stopped) {
+                    try {
+                        m_partial[block.m_table].addBlock(block.m_labelsets,
+                                block.m_rows);
+                    } catch (Throwable th) {
+                        fail(th);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.meka.knime.utils;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "LabelsetStatisticsLoopEnd" Node.
+ *
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetStatisticsLoopEndNodeFactory
+        extends NodeFactory<LabelsetStatisticsLoopEndNodeModel> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LabelsetStatisticsLoopEndNodeModel createNodeModel() {
+        return new LabelsetStatisticsLoopEndNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<LabelsetStatisticsLoopEndNodeModel> createNodeView(
+            final int viewIndex,
+            final LabelsetStatisticsLoopEndNodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return null;
+    }
+
+}
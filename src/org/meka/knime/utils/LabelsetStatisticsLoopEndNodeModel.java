@@ -0,0 +1,161 @@
+package org.meka.knime.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.workflow.LoopEndNode;
+import org.knime.core.node.workflow.LoopStartNodeTerminator;
+import org.meka.knime.ports.LabelsetStatisticsPortObject;
+import org.meka.knime.ports.LabelsetStatisticsPortObjectSpec;
+
+/**
+ * This is the model implementation of the label set statistics loop end. It
+ * merges the statistics of all iterations of its loop, so chunked data is
+ * summarized without concatenating and rescanning the chunks. The
+ * statistics of every iteration must have the spec of the first iteration.
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetStatisticsLoopEndNodeModel extends NodeModel
+        implements LoopEndNode {
+
+    private static final NodeLogger logger = NodeLogger
+            .getLogger(LabelsetStatisticsLoopEndNodeModel.class);
+
+    /* The statistics merged over the iterations so far, null before the
+     * first iteration */
+    private LabelsetStatistics m_accumulated;
+
+    /* The spec of the first iteration */
+    private LabelsetStatisticsPortObjectSpec m_accumulatedSpec;
+
+    /* Number of merged iterations */
+    private int m_iterations;
+
+    /**
+     * Constructor for the node model.
+     */
+    protected LabelsetStatisticsLoopEndNodeModel() {
+        super(new PortType[]{LabelsetStatisticsPortObject.TYPE},
+                new PortType[]{LabelsetStatisticsPortObject.TYPE,
+                        BufferedDataTable.TYPE});
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
+            throws InvalidSettingsException {
+        return new PortObjectSpec[]{inSpecs[0],
+                LabelsetStatisticsMergeNodeModel.createStatisticsSpec()};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObject[] execute(final PortObject[] inData,
+            final ExecutionContext exec) throws Exception {
+        if (!(getLoopStartNode() instanceof LoopStartNodeTerminator)) {
+            throw new IllegalStateException("The loop end is not connected "
+                    + "to a matching loop start node");
+        }
+        LabelsetStatisticsPortObject in =
+                (LabelsetStatisticsPortObject)inData[0];
+        if (m_accumulated == null) {
+            m_accumulated = in.getStatistics().createEmpty(
+                    in.getStatistics().hasCooccurrence());
+            m_accumulatedSpec = in.getSpec();
+        } else if (!in.getSpec().equals(m_accumulatedSpec)) {
+            throw new IllegalArgumentException("The statistics of iteration "
+                    + m_iterations + " differ from those of the first "
+                    + "iteration; they have to be computed over the same "
+                    + "labels in the same mode, with the same sketch errors "
+                    + "and co-occurrence setting");
+        }
+        m_accumulated.merge(in.getStatistics());
+        m_iterations++;
+        if (!((LoopStartNodeTerminator)getLoopStartNode()).terminateLoop()) {
+            continueLoop();
+            return null;
+        }
+        logger.debug("Merged the statistics of " + m_iterations
+                + " iterations");
+        LabelsetStatistics merged = m_accumulated;
+        LabelsetStatisticsPortObjectSpec spec = m_accumulatedSpec;
+        reset();
+        return new PortObject[]{
+                new LabelsetStatisticsPortObject(merged, spec),
+                LabelsetStatisticsMergeNodeModel.createStatisticsTable(merged,
+                        exec)};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void reset() {
+        m_accumulated = null;
+        m_accumulatedSpec = null;
+        m_iterations = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveSettingsTo(final NodeSettingsWO settings) {
+        // no settings
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void validateSettings(final NodeSettingsRO settings)
+            throws InvalidSettingsException {
+        // no settings
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadValidatedSettingsFrom(final NodeSettingsRO settings)
+            throws InvalidSettingsException {
+        // no settings
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadInternals(final File internDir,
+            final ExecutionMonitor exec) throws IOException,
+            CanceledExecutionException {
+        // no internals
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveInternals(final File internDir,
+            final ExecutionMonitor exec) throws IOException,
+            CanceledExecutionException {
+        // no internals
+    }
+}
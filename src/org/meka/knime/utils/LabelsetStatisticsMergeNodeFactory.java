@@ -0,0 +1,58 @@
+package org.meka.knime.utils;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "LabelsetStatisticsMerge" Node.
+ *
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetStatisticsMergeNodeFactory
+        extends NodeFactory<LabelsetStatisticsMergeNodeModel> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LabelsetStatisticsMergeNodeModel createNodeModel() {
+        return new LabelsetStatisticsMergeNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<LabelsetStatisticsMergeNodeModel> createNodeView(
+            final int viewIndex,
+            final LabelsetStatisticsMergeNodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return null;
+    }
+
+}
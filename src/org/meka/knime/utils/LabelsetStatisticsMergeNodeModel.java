@@ -0,0 +1,166 @@
+package org.meka.knime.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.meka.knime.ports.LabelsetStatisticsPortObject;
+import org.meka.knime.ports.LabelsetStatisticsPortObjectSpec;
+
+/**
+ * This is the model implementation of the label set statistics merger. It
+ * merges the statistics at its (optional) second port into the statistics at
+ * the first port. The statistics of the iterations of a loop are merged by
+ * the {@link LabelsetStatisticsLoopEndNodeModel}.
+ *
+ * @author Fernando Benites
+ */
+public class LabelsetStatisticsMergeNodeModel extends NodeModel {
+
+    /* Row keys of the statistics table */
+    private static final String[] STATISTICS = {"Rows", "Labels",
+        "Label cardinality", "Label density", "Unique label sets",
+        "Unique label sets (std. error)"};
+
+    /**
+     * Constructor for the node model.
+     */
+    protected LabelsetStatisticsMergeNodeModel() {
+        super(new PortType[]{LabelsetStatisticsPortObject.TYPE,
+                new PortType(LabelsetStatisticsPortObject.class, true)},
+                new PortType[]{LabelsetStatisticsPortObject.TYPE,
+                        BufferedDataTable.TYPE});
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
+            throws InvalidSettingsException {
+        LabelsetStatisticsPortObjectSpec spec =
+                (LabelsetStatisticsPortObjectSpec)inSpecs[0];
+        if (inSpecs[1] != null && spec != null && !spec.equals(inSpecs[1])) {
+            throw new InvalidSettingsException("The statistics have to be "
+                    + "computed over the same labels in the same mode, with "
+                    + "the same sketch errors and co-occurrence setting");
+        }
+        return new PortObjectSpec[]{spec, createStatisticsSpec()};
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected PortObject[] execute(final PortObject[] inData,
+            final ExecutionContext exec) throws Exception {
+        LabelsetStatisticsPortObject first =
+                (LabelsetStatisticsPortObject)inData[0];
+        LabelsetStatisticsPortObject second =
+                (LabelsetStatisticsPortObject)inData[1];
+        LabelsetStatistics merged = first.getStatistics().createEmpty(
+                first.getStatistics().hasCooccurrence());
+        merged.merge(first.getStatistics());
+        if (second != null) {
+            merged.merge(second.getStatistics());
+        }
+        return new PortObject[]{
+                new LabelsetStatisticsPortObject(merged, first.getSpec()),
+                createStatisticsTable(merged, exec)};
+    }
+
+    /*
+     * One row per statistic, shared with the loop end node.
+     */
+    static BufferedDataTable createStatisticsTable(
+            final LabelsetStatistics stats, final ExecutionContext exec) {
+        BufferedDataContainer container =
+                exec.createDataContainer(createStatisticsSpec());
+        double[] values = {stats.getNrRows(), stats.getNrLabelsSet(),
+            stats.getCardinality(), stats.getDensity(),
+            stats.getNrUniqueLabelsets(),
+            stats.getNrUniqueLabelsets() * stats.getUniqueLabelsetsError()};
+        for (int r = 0; r < STATISTICS.length; r++) {
+            container.addRowToTable(new DefaultRow(new RowKey(STATISTICS[r]),
+                    new DataCell[]{new DoubleCell(values[r])}));
+        }
+        container.close();
+        return container.getTable();
+    }
+
+    static DataTableSpec createStatisticsSpec() {
+        return new DataTableSpec(new DataColumnSpecCreator("Value",
+                DoubleCell.TYPE).createSpec());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void reset() {
+        // nothing to reset
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveSettingsTo(final NodeSettingsWO settings) {
+        // no settings
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void validateSettings(final NodeSettingsRO settings)
+            throws InvalidSettingsException {
+        // no settings
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadValidatedSettingsFrom(final NodeSettingsRO settings)
+            throws InvalidSettingsException {
+        // no settings
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void loadInternals(final File internDir,
+            final ExecutionMonitor exec) throws IOException,
+            CanceledExecutionException {
+        // no internals
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void saveInternals(final File internDir,
+            final ExecutionMonitor exec) throws IOException,
+            CanceledExecutionException {
+        // no internals
+    }
+}
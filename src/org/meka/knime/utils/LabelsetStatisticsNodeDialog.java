@@ -8,7 +8,11 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 
 import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.InvalidSettingsException;
@@ -39,6 +43,20 @@ public class LabelsetStatisticsNodeDialog extends NodeDialogPane {
     /* DataTableSpec at the input port */
     private DataTableSpec m_spec;
     private final JPanel m_all;
+    /* Compute the statistics with several threads */
+    private final JCheckBox m_parallel;
+    /* Number of worker threads */
+    private final JSpinner m_threads;
+    /* Estimate the label sets with sketches */
+    private final JCheckBox m_approximate;
+    /* Relative error of the unique label set estimate */
+    private final JSpinner m_distinctError;
+    /* Relative error of the label set counts */
+    private final JSpinner m_frequencyError;
+    /* Number of reported label sets */
+    private final JSpinner m_topk;
+    /* Count the label co-occurrences */
+    private final JCheckBox m_cooccurrence;
     public static final String CLASSCOL_KEY = "ClassColumn";
     /**
      * New pane for configuring LabelsetStatistics node dialog.
@@ -47,7 +65,7 @@ public class LabelsetStatisticsNodeDialog extends NodeDialogPane {
      */
     protected LabelsetStatisticsNodeDialog() {
         super();
-        m_all = new JPanel(new GridLayout(1, 1));
+        m_all = new JPanel(new GridLayout(4, 1));
 
 
         JPanel panel = new JPanel(new BorderLayout());
@@ -58,6 +76,50 @@ public class LabelsetStatisticsNodeDialog extends NodeDialogPane {
                     DataValue.class);
     //panel.add(m_colsel, BorderLayout.SOUTH);
     m_all.add(m_colsel);
+    m_parallel = new JCheckBox("Compute in parallel");
+    m_threads = new JSpinner(new SpinnerNumberModel(
+            LabelsetStatisticsNodeModel.DEFAULT_THREADS, 1, 256, 1));
+    m_parallel.addActionListener(new ActionListener() {
+        @Override
+        public void actionPerformed(final ActionEvent e) {
+            m_threads.setEnabled(m_parallel.isSelected());
+        }
+    });
+    panel.add(m_parallel, BorderLayout.WEST);
+    JPanel threads = new JPanel();
+    threads.add(new JLabel("Threads"));
+    threads.add(m_threads);
+    panel.add(threads, BorderLayout.EAST);
+    m_all.add(panel);
+    m_approximate = new JCheckBox("Approximate (constant memory)");
+    m_distinctError = new JSpinner(new SpinnerNumberModel(
+            LabelsetStatisticsNodeModel.DEFAULT_DISTINCT_ERROR, 0.001, 0.5,
+            0.001));
+    m_frequencyError = new JSpinner(new SpinnerNumberModel(
+            LabelsetStatisticsNodeModel.DEFAULT_FREQUENCY_ERROR, 0.00001, 0.5,
+            0.0001));
+    m_approximate.addActionListener(new ActionListener() {
+        @Override
+        public void actionPerformed(final ActionEvent e) {
+            m_distinctError.setEnabled(m_approximate.isSelected());
+            m_frequencyError.setEnabled(m_approximate.isSelected());
+        }
+    });
+    JPanel approx = new JPanel();
+    approx.add(m_approximate);
+    approx.add(new JLabel("Unique label sets error"));
+    approx.add(m_distinctError);
+    approx.add(new JLabel("Count error"));
+    approx.add(m_frequencyError);
+    m_all.add(approx);
+    m_topk = new JSpinner(new SpinnerNumberModel(
+            LabelsetStatisticsNodeModel.DEFAULT_TOPK, 0, 100000, 1));
+    JPanel topk = new JPanel();
+    topk.add(new JLabel("Most frequent label sets"));
+    topk.add(m_topk);
+    m_cooccurrence = new JCheckBox("Label co-occurrence and dependency");
+    topk.add(m_cooccurrence);
+    m_all.add(topk);
     super.addTab("Options", m_all);
     
     }
@@ -77,12 +139,46 @@ public class LabelsetStatisticsNodeDialog extends NodeDialogPane {
             }
             m_colsel.update(m_spec, classcol);
         }
+        m_parallel.setSelected(settings.getBoolean(
+                LabelsetStatisticsNodeModel.PARALLEL_KEY, false));
+        m_threads.setValue(settings.getInt(
+                LabelsetStatisticsNodeModel.THREADS_KEY,
+                LabelsetStatisticsNodeModel.DEFAULT_THREADS));
+        m_threads.setEnabled(m_parallel.isSelected());
+        m_approximate.setSelected(settings.getBoolean(
+                LabelsetStatisticsNodeModel.APPROXIMATE_KEY, false));
+        m_distinctError.setValue(settings.getDouble(
+                LabelsetStatisticsNodeModel.DISTINCT_ERROR_KEY,
+                LabelsetStatisticsNodeModel.DEFAULT_DISTINCT_ERROR));
+        m_frequencyError.setValue(settings.getDouble(
+                LabelsetStatisticsNodeModel.FREQUENCY_ERROR_KEY,
+                LabelsetStatisticsNodeModel.DEFAULT_FREQUENCY_ERROR));
+        m_distinctError.setEnabled(m_approximate.isSelected());
+        m_frequencyError.setEnabled(m_approximate.isSelected());
+        m_topk.setValue(settings.getInt(LabelsetStatisticsNodeModel.TOPK_KEY,
+                LabelsetStatisticsNodeModel.DEFAULT_TOPK));
+        m_cooccurrence.setSelected(settings.getBoolean(
+                LabelsetStatisticsNodeModel.COOCCURRENCE_KEY, false));
 }
     @Override
     protected void saveSettingsTo(final NodeSettingsWO settings)
             throws InvalidSettingsException {
         settings.addString(CLASSCOL_KEY,
                 m_colsel.getSelectedColumn());
+        settings.addBoolean(LabelsetStatisticsNodeModel.PARALLEL_KEY,
+                m_parallel.isSelected());
+        settings.addInt(LabelsetStatisticsNodeModel.THREADS_KEY,
+                (Integer)m_threads.getValue());
+        settings.addBoolean(LabelsetStatisticsNodeModel.APPROXIMATE_KEY,
+                m_approximate.isSelected());
+        settings.addDouble(LabelsetStatisticsNodeModel.DISTINCT_ERROR_KEY,
+                ((Number)m_distinctError.getValue()).doubleValue());
+        settings.addDouble(LabelsetStatisticsNodeModel.FREQUENCY_ERROR_KEY,
+                ((Number)m_frequencyError.getValue()).doubleValue());
+        settings.addInt(LabelsetStatisticsNodeModel.TOPK_KEY,
+                (Integer)m_topk.getValue());
+        settings.addBoolean(LabelsetStatisticsNodeModel.COOCCURRENCE_KEY,
+                m_cooccurrence.isSelected());
     }
 }
 
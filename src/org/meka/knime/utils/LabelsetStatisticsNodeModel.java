@@ -1,19 +1,27 @@
 package org.meka.knime.utils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
 import org.knime.core.data.RowKey;
 import org.knime.core.data.StringValue;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
 import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.LongCell;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.data.StringValue;
 import org.knime.core.node.BufferedDataContainer;
@@ -27,6 +35,11 @@ import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.meka.knime.ports.LabelsetStatisticsPortObject;
+import org.meka.knime.ports.LabelsetStatisticsPortObjectSpec;
 
 
 /**
@@ -70,6 +83,77 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
 
     private String m_classcol;
 
+    /** the settings key for the parallel computation. */
+    public static final String PARALLEL_KEY = "Parallel";
+
+    /** the settings key for the number of threads. */
+    public static final String THREADS_KEY = "Threads";
+
+    /** default number of threads in parallel mode. */
+    static final int DEFAULT_THREADS =
+            Runtime.getRuntime().availableProcessors();
+
+    /* Compute the statistics with several threads */
+    private boolean m_parallel = false;
+
+    /* Number of worker threads in parallel mode */
+    private int m_threads = DEFAULT_THREADS;
+
+    /** the settings key for the approximate mode. */
+    public static final String APPROXIMATE_KEY = "Approximate";
+
+    /** the settings key for the relative error of the unique label sets. */
+    public static final String DISTINCT_ERROR_KEY = "DistinctError";
+
+    /** the settings key for the relative error of label set counts. */
+    public static final String FREQUENCY_ERROR_KEY = "FrequencyError";
+
+    /** the settings key for the number of reported label sets. */
+    public static final String TOPK_KEY = "TopLabelsets";
+
+    /** the settings key for the label co-occurrence and dependency output. */
+    public static final String COOCCURRENCE_KEY = "Cooccurrence";
+
+    /** default relative error of the unique label set estimate. */
+    static final double DEFAULT_DISTINCT_ERROR = 0.01;
+
+    /** default relative error of the label set counts. */
+    static final double DEFAULT_FREQUENCY_ERROR = 0.001;
+
+    /** default number of reported label sets. */
+    static final int DEFAULT_TOPK = 20;
+
+    /* Row keys of the statistics table */
+    private static final String[] STATISTICS = {"Rows", "Labels",
+        "Label cardinality", "Label density", "Unique label sets",
+        "Unique label sets (std. error)"};
+
+    /* Estimate the label sets with sketches of constant size */
+    private boolean m_approximate = false;
+
+    /* Relative standard error of the unique label set estimate */
+    private double m_distinctError = DEFAULT_DISTINCT_ERROR;
+
+    /* Maximal error of a label set count, relative to the number of rows */
+    private double m_frequencyError = DEFAULT_FREQUENCY_ERROR;
+
+    /* Number of label sets reported at the second output port */
+    private int m_topk = DEFAULT_TOPK;
+
+    /* Count the label co-occurrences, label x label, for the third and
+     * fourth output port */
+    private boolean m_cooccurrence = false;
+
+    /* Statistics of the training, test and both tables */
+    private LabelsetStatistics m_statstr;
+
+    private LabelsetStatistics m_statsts;
+
+    private LabelsetStatistics m_stats;
+
+    /* File of the statistics in the node internals */
+    private static final String INTERNALS_FILE = "labelset-statistics.bin";
+
     // example value: the models count variable filled from the dialog 
     // and used in the models execution method. The default components of the
     // dialog work with "SettingsModels".
@@ -80,15 +164,20 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
      */
     protected LabelsetStatisticsNodeModel() {
     
-        // TODO one incoming port and one outgoing port is assumed
-        super(2, 0);
+        // the statistics, the most frequent label sets, the label
+        // co-occurrence counts, the pairwise mutual information and the
+        // mergeable statistics of both tables
+        super(new PortType[]{BufferedDataTable.TYPE, BufferedDataTable.TYPE},
+                new PortType[]{BufferedDataTable.TYPE, BufferedDataTable.TYPE,
+                        BufferedDataTable.TYPE, BufferedDataTable.TYPE,
+                        LabelsetStatisticsPortObject.TYPE});
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected BufferedDataTable[] execute(final BufferedDataTable[] inData,
+    protected PortObject[] execute(final PortObject[] inData,
             final ExecutionContext exec) throws Exception {
 
         // TODO do something here
@@ -119,78 +208,246 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
         // will buffer to disc if necessary.
        // BufferedDataContainer container = exec.createDataContainer(outputSpec);
         // let's add m_count rows to it
-        labelsnumbertr=0;
-        labelsnumber=0;
-        labelsnumberts=0;
-        nrrows=0;
-		HashMap<String,Integer> mapcu = new HashMap<String,Integer>();  
-		HashMap<String,Integer> mapcutr = new HashMap<String,Integer>();  
-		HashMap<String,Integer> mapcuts = new HashMap<String,Integer>();  
-
-        for (DataRow row: traindata) {
-        	
-        	String hashu="";
-        	for (int i=0; i< row.getNumCells(); i++){
-        			DataCell c1=row.getCell(i);
-        		if(c1.getClass().equals(StringCell.class) || i<=maxtargetcol){
-        			String ts1=((StringCell) c1).getStringValue();
-        			hashu+=ts1;
-        			if (ts1.compareTo("0")==0){
-        				
-        			}else{
-        				labelsnumbertr+=1;
-        			}
-        					
-        		}
-        	}
-			Integer c = mapcu.get(hashu);
-			mapcu.put(hashu,c == null ? 1 : c+1);
-			c = mapcutr.get(hashu);
-			mapcutr.put(hashu,c == null ? 1 : c+1);
+        // the label sets are packed into bitsets; in parallel mode the rows
+        // of both tables are split into blocks whose partial statistics are
+        // computed concurrently and merged afterwards
+        int[] labelcols = getLabelColumns(inSpec, maxtargetcol);
+        checkCooccurrence(labelcols.length);
+        // in approximate mode the distinct label sets are estimated with
+        // sketches of constant size; the co-occurrence matrices are only
+        // allocated by the collector, one per table
+        LabelsetStatistics prototype = m_approximate
+                ? new LabelsetStatistics(labelcols.length, m_distinctError,
+                        m_frequencyError, false)
+                : new LabelsetStatistics(labelcols.length);
+        // the tables are always scanned: a KNIME table offers no cheap and
+        // reliable way to tell that its content did not change
+        LabelsetStatistics[] stats = new LabelsetStatisticsCollector(
+                labelcols, m_parallel ? m_threads : 1, prototype,
+                m_cooccurrence).collect(
+                new BufferedDataTable[]{traindata, testdata}, exec);
+        m_statstr = stats[0];
+        m_statsts = stats[1];
+        updateStatistics(m_cooccurrence);
+        return new PortObject[]{createStatisticsTable(exec),
+                createLabelsetTable(inSpec, labelcols, exec),
+                createCooccurrenceTable(inSpec, labelcols, exec),
+                createDependencyTable(inSpec, labelcols, exec),
+                new LabelsetStatisticsPortObject(m_stats,
+                        createPortSpec(inSpec, labelcols))};
+    }
+
+    /*
+     * Derives the overall statistics and the fields shown in the view from
+     * the statistics of the training and the test data; the co-occurrences
+     * of all data are only added for the output ports.
+     */
+    private void updateStatistics(final boolean cooccurrence) {
+        m_stats = LabelsetStatistics.merged(m_statstr, m_statsts,
+                cooccurrence);
+        nrrowstr=(int)m_statstr.getNrRows();
+        labelsnumbertr=(int)m_statstr.getNrLabelsSet();
+        LCardtr=m_statstr.getCardinality();
+        nrrowsts=(int)m_statsts.getNrRows();
+        labelsnumberts=(int)m_statsts.getNrLabelsSet();
+        LCardts=m_statsts.getCardinality();
+        nrrows=(int)m_stats.getNrRows();
+        labelsnumber=(int)m_stats.getNrLabelsSet();
+        LCard=m_stats.getCardinality();
+        uniquelabels=m_stats.getNrUniqueLabelsets();
+        uniquelabelstr=m_statstr.getNrUniqueLabelsets();
+        uniquelabelsts=m_statsts.getNrUniqueLabelsets();
+        LDensitytr=m_statstr.getDensity();
+        LDensityts=m_statsts.getDensity();
+        LDensity=m_stats.getDensity();
+    }
+
+    /*
+     * Fails if the co-occurrences are to be counted for more labels than
+     * their matrix can hold.
+     */
+    private void checkCooccurrence(final int nrLabels)
+            throws InvalidSettingsException {
+        if (m_cooccurrence && nrLabels > LabelCooccurrence.MAX_LABELS) {
+            throw new InvalidSettingsException("The label co-occurrence of "
+                    + nrLabels + " labels does not fit into memory, at most "
+                    + LabelCooccurrence.MAX_LABELS + " labels are supported;"
+                    + " uncheck \"Label co-occurrence and dependency\"");
         }
+    }
 
-        nrrowstr=traindata.getRowCount();
-        nrrows+=nrrowstr;
-        labelsnumber+=labelsnumbertr;
-        LCardtr=labelsnumbertr/((double)traindata.getRowCount());
-
-        for (DataRow row: testdata) {
-        	String hashu="";
-        	
-
-        	for (int i=0; i< row.getNumCells(); i++){
-        			DataCell c1=row.getCell(i);
-        		if(c1.getClass().equals(StringCell.class) || i<=maxtargetcol){
-        			String ts1=((StringCell) c1).getStringValue();
-        			hashu+=ts1;
-        			if (ts1.compareTo("0")==0){
-        				
-        			}else{
-        				labelsnumberts+=1;
-        			}
-        					
-        		}
-        	}
-			Integer c = mapcu.get(hashu);
-			mapcu.put(hashu,c == null ? 1 : c+1);
-			c = mapcuts.get(hashu);
-			mapcuts.put(hashu,c == null ? 1 : c+1);
+    /*
+     * Label x label matrix of the number of rows with both labels set, empty
+     * if the co-occurrences are not counted.
+     */
+    private BufferedDataTable createCooccurrenceTable(
+            final DataTableSpec inSpec, final int[] labelcols,
+            final ExecutionContext exec) {
+        BufferedDataContainer container = exec.createDataContainer(
+                createMatrixSpec(inSpec, labelcols, LongCell.TYPE));
+        for (int i = 0; m_stats.hasCooccurrence()
+                && i < labelcols.length; i++) {
+            DataCell[] cells = new DataCell[labelcols.length];
+            for (int j = 0; j < labelcols.length; j++) {
+                cells[j] = new LongCell(m_stats.getCooccurrence(i, j));
+            }
+            container.addRowToTable(new DefaultRow(new RowKey(inSpec
+                    .getColumnSpec(labelcols[i]).getName()), cells));
         }
-        nrrowsts=testdata.getRowCount();
-        nrrows+=nrrowsts;
-        labelsnumber+=labelsnumberts;
-        LCardts=labelsnumberts/((double)testdata.getRowCount());
-        LCard=labelsnumber/((double)nrrows);
-        uniquelabels=mapcu.size();
-        uniquelabelstr=mapcutr.size();
-        uniquelabelsts=mapcuts.size();
-        LDensitytr=LCardtr/((double)maxtargetcol+1);
-        LDensityts=LCardts/((double)maxtargetcol+1);
-        LDensity=LCard/((double)maxtargetcol+1);
-        // once we are done, we close the container and return its table
-       // container.close();
-       // BufferedDataTable out = container.getTable();
-        return new BufferedDataTable[]{};
+        container.close();
+        return container.getTable();
+    }
+
+    /*
+     * Label x label matrix of the mutual information of the labels, empty if
+     * the co-occurrences are not counted.
+     */
+    private BufferedDataTable createDependencyTable(
+            final DataTableSpec inSpec, final int[] labelcols,
+            final ExecutionContext exec) {
+        BufferedDataContainer container = exec.createDataContainer(
+                createMatrixSpec(inSpec, labelcols, DoubleCell.TYPE));
+        for (int i = 0; m_stats.hasCooccurrence()
+                && i < labelcols.length; i++) {
+            DataCell[] cells = new DataCell[labelcols.length];
+            for (int j = 0; j < labelcols.length; j++) {
+                cells[j] = new DoubleCell(m_stats.getMutualInformation(i, j));
+            }
+            container.addRowToTable(new DefaultRow(new RowKey(inSpec
+                    .getColumnSpec(labelcols[i]).getName()), cells));
+        }
+        container.close();
+        return container.getTable();
+    }
+
+    /*
+     * The spec of the mergeable statistics, named after the label columns.
+     */
+    private LabelsetStatisticsPortObjectSpec createPortSpec(
+            final DataTableSpec inSpec, final int[] labelcols) {
+        String[] labels = new String[labelcols.length];
+        for (int i = 0; i < labelcols.length; i++) {
+            labels[i] = inSpec.getColumnSpec(labelcols[i]).getName();
+        }
+        return new LabelsetStatisticsPortObjectSpec(labels, m_approximate,
+                m_approximate ? HyperLogLog.precisionFor(m_distinctError) : 0,
+                m_approximate
+                        ? LabelsetHeavyHitters.capacityFor(m_frequencyError)
+                        : 0, m_cooccurrence);
+    }
+
+    /*
+     * One column of the given type per label.
+     */
+    private static DataTableSpec createMatrixSpec(final DataTableSpec inSpec,
+            final int[] labelcols, final DataType type) {
+        DataColumnSpec[] cols = new DataColumnSpec[labelcols.length];
+        for (int i = 0; i < labelcols.length; i++) {
+            cols[i] = new DataColumnSpecCreator(inSpec.getColumnSpec(
+                    labelcols[i]).getName(), type).createSpec();
+        }
+        return new DataTableSpec(cols);
+    }
+
+    /*
+     * One row per statistic, one column per table.
+     */
+    private BufferedDataTable createStatisticsTable(
+            final ExecutionContext exec) {
+        BufferedDataContainer container =
+                exec.createDataContainer(createStatisticsSpec());
+        LabelsetStatistics[] stats = {m_stats, m_statstr, m_statsts};
+        double[][] values = new double[STATISTICS.length][stats.length];
+        for (int i = 0; i < stats.length; i++) {
+            double lcard = stats[i].getCardinality();
+            values[0][i] = stats[i].getNrRows();
+            values[1][i] = stats[i].getNrLabelsSet();
+            values[2][i] = lcard;
+            values[3][i] = stats[i].getDensity();
+            values[4][i] = stats[i].getNrUniqueLabelsets();
+            values[5][i] = stats[i].getNrUniqueLabelsets()
+                    * stats[i].getUniqueLabelsetsError();
+        }
+        for (int r = 0; r < STATISTICS.length; r++) {
+            DataCell[] cells = new DataCell[stats.length];
+            for (int i = 0; i < stats.length; i++) {
+                cells[i] = new DoubleCell(values[r][i]);
+            }
+            container.addRowToTable(new DefaultRow(new RowKey(STATISTICS[r]),
+                    cells));
+        }
+        container.close();
+        return container.getTable();
+    }
+
+    /*
+     * The most frequent label sets of both tables.
+     */
+    private BufferedDataTable createLabelsetTable(final DataTableSpec inSpec,
+            final int[] labelcols, final ExecutionContext exec) {
+        BufferedDataContainer container =
+                exec.createDataContainer(createLabelsetSpec());
+        int r = 0;
+        for (LabelsetStatistics.FrequentLabelset ls : m_stats
+                .getFrequentLabelsets(m_topk)) {
+            StringBuilder names = new StringBuilder("{");
+            for (int l = 0; l < labelcols.length; l++) {
+                if (ls.contains(l)) {
+                    if (names.length() > 1) {
+                        names.append(',');
+                    }
+                    names.append(inSpec.getColumnSpec(labelcols[l]).getName());
+                }
+            }
+            names.append('}');
+            container.addRowToTable(new DefaultRow(RowKey.createRowKey(r++),
+                    new StringCell(names.toString()),
+                    new LongCell(ls.getCount()), new LongCell(ls.getError()),
+                    new DoubleCell(ls.getCount() / (double)m_stats.getNrRows())));
+        }
+        container.close();
+        return container.getTable();
+    }
+
+    private static DataTableSpec createStatisticsSpec() {
+        return new DataTableSpec(
+                new DataColumnSpecCreator("All", DoubleCell.TYPE).createSpec(),
+                new DataColumnSpecCreator("Train", DoubleCell.TYPE)
+                        .createSpec(),
+                new DataColumnSpecCreator("Test", DoubleCell.TYPE)
+                        .createSpec());
+    }
+
+    private static DataTableSpec createLabelsetSpec() {
+        return new DataTableSpec(
+                new DataColumnSpecCreator("Labelset", StringCell.TYPE)
+                        .createSpec(),
+                new DataColumnSpecCreator("Count", LongCell.TYPE).createSpec(),
+                new DataColumnSpecCreator("Max error", LongCell.TYPE)
+                        .createSpec(),
+                new DataColumnSpecCreator("Frequency", DoubleCell.TYPE)
+                        .createSpec());
+    }
+
+    /**
+     * Determines the label columns: all columns up to the target column and
+     * all string columns after it.
+     *
+     * @param spec the spec of the table.
+     * @param maxtargetcol the index of the last target column.
+     * @return the indices of the label columns.
+     */
+    static int[] getLabelColumns(final DataTableSpec spec,
+            final int maxtargetcol) {
+        int[] cols = new int[spec.getNumColumns()];
+        int n = 0;
+        for (int i = 0; i < spec.getNumColumns(); i++) {
+            if (i <= maxtargetcol
+                    || spec.getColumnSpec(i).getType().equals(StringCell.TYPE)) {
+                cols[n++] = i;
+            }
+        }
+        return Arrays.copyOf(cols, n);
     }
 
     /**
@@ -201,13 +458,16 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
         // TODO Code executed on reset.
         // Models build during execute are cleared here.
         // Also data handled in load/saveInternals will be erased here.
+        m_statstr = null;
+        m_statsts = null;
+        m_stats = null;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected DataTableSpec[] configure(final DataTableSpec[] inSpecs)
+    protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
             throws InvalidSettingsException {
         
         // TODO: check if user settings are available, fit to the incoming
@@ -216,7 +476,21 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
         // the spec of its output data table(s) (if you can, otherwise an array
         // with null elements), or throw an exception with a useful user message
 
-        return new DataTableSpec[]{};
+        DataTableSpec inSpec = (DataTableSpec)inSpecs[0];
+        int classcol = m_classcol == null ? -1
+                : inSpec.findColumnIndex(m_classcol);
+        if (classcol < 0) {
+            // the matrices depend on the label columns
+            return new PortObjectSpec[]{createStatisticsSpec(),
+                    createLabelsetSpec(), null, null, null};
+        }
+        int[] labelcols = getLabelColumns(inSpec, classcol);
+        checkCooccurrence(labelcols.length);
+        return new PortObjectSpec[]{createStatisticsSpec(),
+                createLabelsetSpec(),
+                createMatrixSpec(inSpec, labelcols, LongCell.TYPE),
+                createMatrixSpec(inSpec, labelcols, DoubleCell.TYPE),
+                createPortSpec(inSpec, labelcols)};
     }
 
     /**
@@ -229,6 +503,13 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
         
         
         settings.addString(CLASSCOL_KEY, m_classcol);
+        settings.addBoolean(PARALLEL_KEY, m_parallel);
+        settings.addInt(THREADS_KEY, m_threads);
+        settings.addBoolean(APPROXIMATE_KEY, m_approximate);
+        settings.addDouble(DISTINCT_ERROR_KEY, m_distinctError);
+        settings.addDouble(FREQUENCY_ERROR_KEY, m_frequencyError);
+        settings.addInt(TOPK_KEY, m_topk);
+        settings.addBoolean(COOCCURRENCE_KEY, m_cooccurrence);
 
     }
 
@@ -246,6 +527,16 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
         if (settings.containsKey(CLASSCOL_KEY)) {
             m_classcol = settings.getString(CLASSCOL_KEY);
         }
+        // older workflows have no parallel settings
+        m_parallel = settings.getBoolean(PARALLEL_KEY, false);
+        m_threads = settings.getInt(THREADS_KEY, DEFAULT_THREADS);
+        m_approximate = settings.getBoolean(APPROXIMATE_KEY, false);
+        m_distinctError =
+                settings.getDouble(DISTINCT_ERROR_KEY, DEFAULT_DISTINCT_ERROR);
+        m_frequencyError = settings.getDouble(FREQUENCY_ERROR_KEY,
+                DEFAULT_FREQUENCY_ERROR);
+        m_topk = settings.getInt(TOPK_KEY, DEFAULT_TOPK);
+        m_cooccurrence = settings.getBoolean(COOCCURRENCE_KEY, false);
 
     }
 
@@ -260,7 +551,23 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
         // e.g. if the count is in a certain range (which is ensured by the
         // SettingsModel).
         // Do not actually set any values of any member variables.
-
+        if (settings.getInt(THREADS_KEY, DEFAULT_THREADS) < 1) {
+            throw new InvalidSettingsException(
+                    "The number of threads must be at least 1");
+        }
+        double distinctError =
+                settings.getDouble(DISTINCT_ERROR_KEY, DEFAULT_DISTINCT_ERROR);
+        double frequencyError = settings.getDouble(FREQUENCY_ERROR_KEY,
+                DEFAULT_FREQUENCY_ERROR);
+        if (!(distinctError > 0 && distinctError < 1)
+                || !(frequencyError > 0 && frequencyError < 1)) {
+            throw new InvalidSettingsException(
+                    "The relative errors must be between 0 and 1");
+        }
+        if (settings.getInt(TOPK_KEY, DEFAULT_TOPK) < 0) {
+            throw new InvalidSettingsException(
+                    "The number of label sets must not be negative");
+        }
 
     }
     
@@ -278,7 +585,21 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
         // and user settings set through loadSettingsFrom - is all taken care 
         // of). Load here only the other internals that need to be restored
         // (e.g. data used by the views).
-
+        File file = new File(internDir, INTERNALS_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            maxtargetcol = in.readInt();
+            m_statstr = LabelsetStatistics.load(in);
+            m_statsts = LabelsetStatistics.load(in);
+        } finally {
+            in.close();
+        }
+        // the view shows no co-occurrences
+        updateStatistics(false);
     }
     
     /**
@@ -295,7 +616,18 @@ public class LabelsetStatisticsNodeModel extends NodeModel {
         // and user settings saved through saveSettingsTo - is all taken care 
         // of). Save here only the other internals that need to be preserved
         // (e.g. data used by the views).
-
+        if (m_statstr == null || m_statsts == null) {
+            return;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(internDir, INTERNALS_FILE))));
+        try {
+            out.writeInt(maxtargetcol);
+            m_statstr.save(out);
+            m_statsts.save(out);
+        } finally {
+            out.close();
+        }
     }
 
 }
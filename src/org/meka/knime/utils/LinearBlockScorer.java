@@ -0,0 +1,318 @@
+package org.meka.knime.utils;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import meka.classifiers.multilabel.BR;
+import meka.classifiers.multilabel.MultiLabelClassifier;
+import no.uib.cipr.matrix.DenseMatrix;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.LibLINEAR;
+import weka.classifiers.functions.Logistic;
+import weka.core.Instances;
+import weka.filters.Filter;
+
+import de.bwaldvogel.liblinear.Model;
+
+/**
+ * Scores a block with one matrix product (BLAS dgemm through MTJ), for BR
+ * models over logistic regression base classifiers: the label scores are
+ * then the logistic function of an affine function of the numeric features.
+ * The weights are read from the trained base classifiers by
+ * {@link #compile(MultiLabelClassifier, Instances)}, only if the structure of
+ * the model guarantees this form (BR over {@link Logistic}, or over
+ * {@link LibLINEAR} with a logistic regression solver and probability
+ * estimates, without normalization). No other model is compiled, in
+ * particular not CC, whose chain feeds the thresholded predictions of the
+ * earlier labels to the later ones. Rows with missing values are scored by
+ * the classifier itself.
+ *
+ * @author Fernando Benites
+ */
+public class LinearBlockScorer implements BlockScorer {
+
+    /* Maximal number of weights compiled, about 400 MB. */
+    private static final long MAX_WEIGHTS = 50000000L;
+
+    /* Number of training rows the extracted weights are checked on. */
+    private static final int NR_CHECKED = 64;
+
+    /* Maximal absolute deviation from the classifier's scores. */
+    private static final double TOLERANCE = 1e-6;
+
+    /* The classifier, for rows with missing values. */
+    private final MultiLabelClassifier m_classifier;
+
+    /* Index of the first feature attribute, the number of labels. */
+    private final int m_offset;
+
+    /* The weights, one row per feature and one column per label. */
+    private final DenseMatrix m_weights;
+
+    /* The bias of every label. */
+    private final double[] m_bias;
+
+    private LinearBlockScorer(final MultiLabelClassifier classifier,
+            final int offset, final DenseMatrix weights, final double[] bias) {
+        m_classifier = classifier;
+        m_offset = offset;
+        m_weights = weights;
+        m_bias = bias;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double[][] score(final InstanceBlock block) throws Exception {
+        int n = block.size();
+        double[][] scores = new double[n][];
+        if (n == 0) {
+            return scores;
+        }
+        int nrFeatures = m_weights.numRows();
+        double[][] values = block.getValues();
+        // the features of the block, column major, rows with missing values
+        // left at 0 and scored by the classifier
+        DenseMatrix x = new DenseMatrix(n, nrFeatures);
+        double[] data = x.getData();
+        for (int r = 0; r < n; r++) {
+            double[] row = values[r];
+            boolean missing = false;
+            for (int f = 0; f < nrFeatures && !missing; f++) {
+                missing = Double.isNaN(row[m_offset + f]);
+            }
+            if (missing) {
+                scores[r] = m_classifier.distributionForInstance(
+                        block.getInstance(r));
+            } else {
+                for (int f = 0; f < nrFeatures; f++) {
+                    data[r + f * n] = row[m_offset + f];
+                }
+            }
+        }
+        DenseMatrix z = new DenseMatrix(n, m_bias.length);
+        x.mult(m_weights, z);
+        double[] zdata = z.getData();
+        for (int r = 0; r < n; r++) {
+            if (scores[r] == null) {
+                double[] y = new double[m_bias.length];
+                for (int l = 0; l < y.length; l++) {
+                    y[l] = logistic(zdata[r + l * n] + m_bias[l]);
+                }
+                scores[r] = y;
+            }
+        }
+        return scores;
+    }
+
+    /*
+     * The label scores of the values of a row without missing values,
+     * without BLAS, to check the weights.
+     */
+    private double[] score(final double[] x) {
+        int nrFeatures = m_weights.numRows();
+        double[] w = m_weights.getData();
+        double[] y = new double[m_bias.length];
+        for (int l = 0; l < y.length; l++) {
+            double z = m_bias[l];
+            for (int f = 0; f < nrFeatures; f++) {
+                z += w[f + l * nrFeatures] * x[m_offset + f];
+            }
+            y[l] = logistic(z);
+        }
+        return y;
+    }
+
+    /**
+     * @return the number of labels.
+     */
+    public int getNrLabels() {
+        return m_bias.length;
+    }
+
+    /**
+     * Reads the weight matrix of a BR model over logistic regressions.
+     *
+     * @param classifier the trained classifier.
+     * @param data the training instances, the class index is the number of
+     *            labels.
+     * @return the scorer, null if the model is not a BR over supported
+     *         logistic regressions or has nominal features.
+     * @throws Exception if the classifier fails.
+     */
+    public static LinearBlockScorer compile(
+            final MultiLabelClassifier classifier, final Instances data)
+            throws Exception {
+        // subclasses may score differently
+        if (classifier.getClass() != BR.class) {
+            return null;
+        }
+        int nrLabels = data.classIndex();
+        int nrFeatures = data.numAttributes() - nrLabels;
+        if (nrLabels <= 0 || (long)nrLabels * nrFeatures > MAX_WEIGHTS) {
+            return null;
+        }
+        Map<String, Integer> features = new HashMap<String, Integer>();
+        for (int f = 0; f < nrFeatures; f++) {
+            if (!data.attribute(nrLabels + f).isNumeric()) {
+                return null;
+            }
+            features.put(data.attribute(nrLabels + f).name(), f);
+        }
+        Object base = field(classifier, BR.class, "m_MultiClassifiers");
+        if (!(base instanceof Classifier[])
+                || ((Classifier[])base).length != nrLabels) {
+            return null;
+        }
+        // column major, one column per label
+        double[] weights = new double[nrLabels * nrFeatures];
+        double[] bias = new double[nrLabels];
+        for (int l = 0; l < nrLabels; l++) {
+            Classifier c = ((Classifier[])base)[l];
+            boolean read = false;
+            if (c != null && c.getClass() == Logistic.class) {
+                read = readLogistic((Logistic)c, features, weights,
+                        l * nrFeatures, bias, l);
+            } else if (c != null && c.getClass() == LibLINEAR.class) {
+                read = readLibLINEAR((LibLINEAR)c, nrFeatures, weights,
+                        l * nrFeatures, bias, l);
+            }
+            if (!read) {
+                return null;
+            }
+        }
+        LinearBlockScorer scorer = new LinearBlockScorer(classifier,
+                nrLabels, new DenseMatrix(nrFeatures, nrLabels, weights,
+                        false), bias);
+        // guards against a base classifier version storing its
+        // coefficients differently
+        return scorer.check(data) ? scorer : null;
+    }
+
+    /*
+     * Logistic scores the first class value with exp(v) / (1 + exp(v)), v
+     * the linear predictor, so the score of the second value (the label
+     * read by BR) is the logistic function of -v. The coefficients belong
+     * to the attributes left by its filter, in order, the class skipped.
+     */
+    private static boolean readLogistic(final Logistic logistic,
+            final Map<String, Integer> features, final double[] weights,
+            final int offset, final double[] bias, final int label)
+            throws Exception {
+        double[][] par = logistic.coefficients();
+        if (par == null || par.length == 0 || par[0].length != 1) {
+            return false;
+        }
+        bias[label] = -par[0][0];
+        Object filter = field(logistic, Logistic.class, "m_AttFilter");
+        if (!(filter instanceof Filter)) {
+            // no filter, the coefficients of all features
+            if (par.length != features.size() + 1) {
+                return false;
+            }
+            for (int f = 0; f < features.size(); f++) {
+                weights[offset + f] = -par[f + 1][0];
+            }
+            return true;
+        }
+        // the features removed as useless keep the weight 0
+        Instances format = ((Filter)filter).getOutputFormat();
+        int k = 1;
+        for (int a = 0; a < format.numAttributes(); a++) {
+            if (a == format.classIndex()) {
+                continue;
+            }
+            Integer f = features.get(format.attribute(a).name());
+            if (f == null || k >= par.length) {
+                return false;
+            }
+            weights[offset + f] = -par[k++][0];
+        }
+        return k == par.length;
+    }
+
+    /*
+     * LibLINEAR maps attribute a of the label's data (the label first, then
+     * the features) to feature a + 1 and appends the bias feature; the
+     * probability of the first label of the model is the logistic function
+     * of the decision value.
+     */
+    private static boolean readLibLINEAR(final LibLINEAR liblinear,
+            final int nrFeatures, final double[] weights, final int offset,
+            final double[] bias, final int label) {
+        Model model = liblinear.getModel();
+        if (liblinear.getNormalize() || !liblinear.getProbabilityEstimates()
+                || model == null || !model.isProbabilityModel()
+                || model.getNrClass() != 2) {
+            return false;
+        }
+        double[] w = model.getFeatureWeights();
+        // the features used by liblinear, the bias feature included
+        int n = model.getBias() >= 0 ? model.getNrFeature() + 1
+                : model.getNrFeature();
+        if (w.length < n) {
+            return false;
+        }
+        double sign = model.getLabels()[0] == 1 ? 1.0 : -1.0;
+        for (int f = 0; f < nrFeatures; f++) {
+            int index = f + 2;
+            weights[offset + f] = index <= n ? sign * w[index - 1] : 0.0;
+        }
+        int biasIndex = nrFeatures + 2;
+        bias[label] = liblinear.getBias() >= 0 && biasIndex <= n
+                ? sign * w[biasIndex - 1] * liblinear.getBias() : 0.0;
+        return true;
+    }
+
+    /*
+     * The value of a non-public field, null if it does not exist.
+     */
+    private static Object field(final Object o, final Class<?> declaring,
+            final String name) {
+        try {
+            Field field = declaring.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(o);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /*
+     * True if the scores match the classifier's on a sample of the training
+     * rows without missing values.
+     */
+    private boolean check(final Instances data) throws Exception {
+        int n = data.numInstances();
+        int step = Math.max(1, n / NR_CHECKED);
+        ReusableInstance x = new ReusableInstance(data);
+        double[] values = x.getValues();
+        int checked = 0;
+        for (int i = 0; i < n; i += step) {
+            boolean missing = false;
+            for (int a = 0; a < values.length; a++) {
+                values[a] = a < m_offset ? 0.0 : data.instance(i).value(a);
+                missing |= a >= m_offset && Double.isNaN(values[a]);
+            }
+            if (missing) {
+                continue;
+            }
+            double[] compiled = score(values);
+            double[] expected = m_classifier.distributionForInstance(x);
+            for (int l = 0; l < compiled.length; l++) {
+                if (!(Math.abs(compiled[l] - expected[l]) <= TOLERANCE)) {
+                    return false;
+                }
+            }
+            checked++;
+        }
+        return checked > 0;
+    }
+
+    private static double logistic(final double z) {
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+}
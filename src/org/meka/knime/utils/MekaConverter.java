@@ -58,6 +58,7 @@ import org.knime.core.data.StringValue;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
 
 import weka.associations.Associator;
 import weka.classifiers.Classifier;
@@ -87,6 +88,11 @@ public class MekaConverter {
      */
     private DataCellStringMapper m_mapper;
 
+    /*
+     * The weka attributes of the spec, created on first use.
+     */
+    private Attribute[] m_attributes;
+
     /**
      * Constructor.
      *
@@ -107,32 +113,20 @@ public class MekaConverter {
      */
     public String[] testAttributes(final Classifier classifier,
             final String classattribute) {
-        Attribute[] attributes = createWekaAttributes();
+        Attribute[] attributes = getWekaAttributes();
+        Capabilities cap = classifier.getCapabilities();
         String[] fail = new String[attributes.length];
         for (int i = 0; i < attributes.length; i++) {
-            Capabilities cap = classifier.getCapabilities();
-            if (attributes[i].name().equals(
-                    m_mapper.origStringToString(classattribute))) {
-                cap.test(attributes[i], true);
-                Exception e = cap.getFailReason();
-                fail[i] = (e == null) ? "" : e.getMessage();
-
-            } else {
-                cap.test(attributes[i]);
-                Exception e = cap.getFailReason();
-                fail[i] = (e == null) ? "" : e.getMessage();
-            }
+            fail[i] = testAttribute(cap, i, classattribute);
         }
         return fail;
     }
     public String[] testAttributes(final Clusterer clusterer) {
-        Attribute[] attributes = createWekaAttributes();
+        Attribute[] attributes = getWekaAttributes();
+        Capabilities cap = clusterer.getCapabilities();
         String[] fail = new String[attributes.length];
         for (int i = 0; i < attributes.length; i++) {
-            Capabilities cap = clusterer.getCapabilities();
-            cap.test(attributes[i]);
-            Exception e = cap.getFailReason();
-            fail[i] = (e == null) ? "" : e.getMessage();
+            fail[i] = testAttribute(cap, i, null);
         }
         return fail;
     }
@@ -146,21 +140,11 @@ public class MekaConverter {
      */
     public String[] testAttributes(final Associator associator,
             final String classattribute) {
-        Attribute[] attributes = createWekaAttributes();
+        Attribute[] attributes = getWekaAttributes();
+        Capabilities cap = associator.getCapabilities();
         String[] fail = new String[attributes.length];
         for (int i = 0; i < attributes.length; i++) {
-            Capabilities cap = associator.getCapabilities();
-            if (attributes[i].name().equals(
-                    m_mapper.origStringToString(classattribute))) {
-                cap.test(attributes[i], true);
-                Exception e = cap.getFailReason();
-                fail[i] = (e == null) ? "" : e.getMessage();
-
-            } else {
-                cap.test(attributes[i]);
-                Exception e = cap.getFailReason();
-                fail[i] = (e == null) ? "" : e.getMessage();
-            }
+            fail[i] = testAttribute(cap, i, classattribute);
         }
         return fail;
     }
@@ -176,27 +160,55 @@ public class MekaConverter {
     
     public String[] testAttributes(Classifier classifier,
 			Set<String> invalidIncludeColumns) {
-    	Attribute[] attributes = createWekaAttributes();
+    	Attribute[] attributes = getWekaAttributes();
+    	Capabilities cap = classifier.getCapabilities();
     	String[] fail = new String[attributes.length];
     	@SuppressWarnings("rawtypes")
 		Iterator it = invalidIncludeColumns.iterator();
     	for (int i = 0; i < attributes.length; i++) {
-            Capabilities cap = classifier.getCapabilities();
-            if (attributes[i].name().equals(
-                    m_mapper.origStringToString(it.next().toString()))) {
-                cap.test(attributes[i], true);
-                Exception e = cap.getFailReason();
-                fail[i] = (e == null) ? "" : e.getMessage();
-
-            } else {
-                cap.test(attributes[i]);
-                Exception e = cap.getFailReason();
-                fail[i] = (e == null) ? "" : e.getMessage();
-            }
+            fail[i] = testAttribute(cap, i, it.next().toString());
         }
         return fail;
 	}
 
+    /**
+     * Tests a single attribute against already fetched capabilities. The
+     * attributes are created only once per converter, so this method can be
+     * called for each column without rebuilding the weka attributes.
+     *
+     * @param cap the capabilities of the classifier, clusterer or associator.
+     * @param index the index of the attribute (column) to test.
+     * @param classattribute the class attribute or <code>null</code>.
+     * @return the error message if the attribute test failed, otherwise an
+     *         empty string.
+     */
+    public String testAttribute(final Capabilities cap, final int index,
+            final String classattribute) {
+        Attribute att = getWekaAttributes()[index];
+        boolean ok;
+        if (classattribute != null && att.name().equals(
+                m_mapper.origStringToString(classattribute))) {
+            ok = cap.test(att, true);
+        } else {
+            ok = cap.test(att);
+        }
+        if (ok) {
+            return "";
+        }
+        Exception e = cap.getFailReason();
+        return (e == null) ? "" : e.getMessage();
+    }
+
+    /*
+     * Returns the weka attributes, creating them on first access.
+     */
+    private Attribute[] getWekaAttributes() {
+        if (m_attributes == null) {
+            m_attributes = createWekaAttributes();
+        }
+        return m_attributes;
+    }
+
     /*
      * Creates the weka attributes.
      */
@@ -369,6 +381,26 @@ public class MekaConverter {
             final int[] order) {
         Instance tempinstance = new DenseInstance(inst.numAttributes());
         tempinstance.setDataset(inst);
+        return convertInto(row, tempinstance, mapper, order);
+    }
+
+    /**
+     * Converts a DataRow into an existing Weka Instance, overwriting its
+     * values. With a {@link ReusableInstance} no memory is allocated for
+     * numeric values.
+     *
+     * @param row the {@link DataRow} to convert.
+     * @param tempinstance the instance to overwrite, associated with the
+     *            weka-instances of the training data.
+     * @param mapper a {@link DataCellStringMapper} mapping DataCell values to
+     *            weka-strings.
+     * @param order the order in which the {@link DataCell}s of the
+     *            {@link DataRow} should be processed.
+     * @return the given instance.
+     */
+    public static Instance convertInto(final DataRow row,
+            final Instance tempinstance, final DataCellStringMapper mapper,
+            final int[] order) {
         for (int i = 0; i < order.length; i++) {
             if (order[i] != -1 && !row.getCell(order[i]).isMissing()) {
                 DataCell cell = row.getCell(order[i]);
@@ -387,6 +419,36 @@ public class MekaConverter {
         return tempinstance;
     }
 
+    /**
+     * Binds the columns of a table to the columns of the training data, for
+     * {@link #convertToInstance(DataRow, Instances, DataCellStringMapper, int[])}.
+     * The rows are then converted directly from the table, without a
+     * rearranged copy.
+     *
+     * @param trainingspec the spec of the training data, the label columns
+     *            first.
+     * @param spec the spec of the table to convert.
+     * @param nrLabels the number of label columns.
+     * @return for every column of the training data the index of the column
+     *         of the same name in the table, -1 for a missing label column.
+     * @throws InvalidSettingsException if a feature column is missing.
+     */
+    public static int[] bindColumns(final DataTableSpec trainingspec,
+            final DataTableSpec spec, final int nrLabels)
+            throws InvalidSettingsException {
+        int[] order = new int[trainingspec.getNumColumns()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = spec.findColumnIndex(
+                    trainingspec.getColumnSpec(i).getName());
+            if (order[i] < 0 && i >= nrLabels) {
+                throw new InvalidSettingsException("Column "
+                        + trainingspec.getColumnSpec(i).getName()
+                        + " of the training data is missing in the input data");
+            }
+        }
+        return order;
+    }
+
     /**
      * Light-weight html parser to get rid of html-tags in the weka classifier
      * description
@@ -0,0 +1,211 @@
+/*
+ * ------------------------------------------------------------------
+ * Copyright by
+ * University of Konstanz, Germany.
+ * Chair for Bioinformatics and Information Mining
+ * Prof. Dr. Michael R. Berthold
+ *
+ * This file is part of the MEKA integration plugin for KNIME.
+ *
+ * The MEKA integration plugin is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St., Fifth Floor, Boston, MA 02110-1301, USA.
+ * Or contact us: contact@knime.org.
+ * ---------------------------------------------------------------------
+ */
+package org.meka.knime.utils;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+import meka.classifiers.multilabel.BR;
+import meka.classifiers.multilabel.CC;
+import meka.classifiers.multilabel.MultiLabelClassifier;
+
+import org.knime.core.node.NodeLogger;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * A low-priority Thread that loads the MEKA classes listed in
+ * <code>meka-classes.props</code> and runs a tiny train/predict cycle, so
+ * that the first real execution of a MEKA node does not pay for class loading
+ * and JIT compilation.
+ */
+public class MekaWarmupTask extends Thread {
+
+    private static final NodeLogger LOGGER = NodeLogger
+            .getLogger(MekaWarmupTask.class);
+
+    /*
+     * Properties file listing the available classifiers.
+     */
+    private static final String CLASSES_FILE =
+            "/org/meka/knime/meka-classes.props";
+
+    /*
+     * Properties key of the multi-label classifier list.
+     */
+    private static final String CLASSIFIER_KEY =
+            MultiLabelClassifier.class.getName();
+
+    /*
+     * Number of labels and features of the synthetic data set.
+     */
+    private static final int NR_LABELS = 3;
+
+    private static final int NR_FEATURES = 4;
+
+    private static final int NR_ROWS = 16;
+
+    /*
+     * Set by stop request, checked between the warm-up steps.
+     */
+    private volatile boolean m_stopped;
+
+    /**
+     * Creates a new warm-up thread. The thread is a daemon with minimum
+     * priority and does not keep the application alive.
+     */
+    public MekaWarmupTask() {
+        super("MEKA warm-up");
+        setDaemon(true);
+        setPriority(Thread.MIN_PRIORITY);
+        m_stopped = false;
+    }
+
+    /**
+     * Requests the warm-up to stop after the current step.
+     */
+    public void requestStop() {
+        m_stopped = true;
+        interrupt();
+    }
+
+    /**
+     * Loads the classifier classes and trains the synthetic models.
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        long start = System.currentTimeMillis();
+        int loaded = loadClasses();
+        if (!m_stopped) {
+            try {
+                Instances data = createSyntheticData();
+                trainAndPredict(new BR(), data);
+                trainAndPredict(new CC(), data);
+            } catch (Throwable e) {
+                // the warm-up must never disturb the workbench
+                LOGGER.debug("MEKA warm-up cycle failed", e);
+            }
+        }
+        LOGGER.debug("MEKA warm-up loaded " + loaded + " classes in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /*
+     * Loads (and initializes) all multi-label classifier classes of the
+     * properties file. Returns the number of classes loaded.
+     */
+    private int loadClasses() {
+        Properties props = new Properties();
+        InputStream in = null;
+        try {
+            in = MekaWarmupTask.class.getResourceAsStream(CLASSES_FILE);
+            if (in == null) {
+                return 0;
+            }
+            props.load(in);
+        } catch (Exception e) {
+            LOGGER.debug("Could not read " + CLASSES_FILE, e);
+            return 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (Exception e) {
+                    LOGGER.debug("Could not close stream", e);
+                }
+            }
+        }
+        String list = props.getProperty(CLASSIFIER_KEY, "");
+        ClassLoader loader = MekaWarmupTask.class.getClassLoader();
+        int count = 0;
+        StringTokenizer st = new StringTokenizer(list, ", \\");
+        while (st.hasMoreTokens() && !m_stopped) {
+            String name = st.nextToken().trim();
+            try {
+                Class.forName(name, true, loader).newInstance();
+                count++;
+            } catch (Throwable e) {
+                // not every listed class is available in every installation
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Creates a small multi-label data set with the labels in front, as
+     * expected by MEKA.
+     */
+    private static Instances createSyntheticData() {
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        ArrayList<String> binary = new ArrayList<String>();
+        binary.add("0");
+        binary.add("1");
+        for (int l = 0; l < NR_LABELS; l++) {
+            atts.add(new Attribute("label" + l, binary));
+        }
+        for (int f = 0; f < NR_FEATURES; f++) {
+            atts.add(new Attribute("feature" + f));
+        }
+        Instances data = new Instances("MEKA-Warmup", atts, NR_ROWS);
+        data.setClassIndex(NR_LABELS);
+        for (int r = 0; r < NR_ROWS; r++) {
+            double[] vals = new double[NR_LABELS + NR_FEATURES];
+            for (int l = 0; l < NR_LABELS; l++) {
+                vals[l] = ((r >> l) & 1);
+            }
+            for (int f = 0; f < NR_FEATURES; f++) {
+                vals[NR_LABELS + f] = ((r * (f + 3)) % 7) / 7.0;
+            }
+            data.add(new DenseInstance(1.0, vals));
+        }
+        return data;
+    }
+
+    /*
+     * Trains the classifier and predicts every training row once.
+     */
+    private void trainAndPredict(final MultiLabelClassifier classifier,
+            final Instances data) throws Exception {
+        if (m_stopped) {
+            return;
+        }
+        classifier.buildClassifier(data);
+        for (int i = 0; i < data.numInstances() && !m_stopped; i++) {
+            Instance x = (Instance)data.instance(i).copy();
+            for (int l = 0; l < NR_LABELS; l++) {
+                x.setValue(l, 0.0);
+            }
+            classifier.distributionForInstance(x);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.meka.knime.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Shares deserialized models between the nodes of all workflows. Models are
+ * keyed by the SHA-1 hash of their serialized form, so nodes holding the
+ * same model (several predictors of one classifier, the iterations of a
+ * loop) deserialize it once when the workflow is loaded. A model is held
+ * strongly while it is acquired by at least one node and softly afterwards,
+ * so it is only kept under memory pressure if still in use. Shared models
+ * must only be read; a node that modifies its model must deserialize its own
+ * copy.
+ *
+ * @author Fernando Benites
+ */
+public final class ModelRegistry {
+
+    /* The models by hash. */
+    private static final Map<String, Entry> ENTRIES =
+            new HashMap<String, Entry>();
+
+    /* The acquired models, by identity. */
+    private static final Map<Object, Entry> ACQUIRED =
+            new IdentityHashMap<Object, Entry>();
+
+    private ModelRegistry() {
+        // utility class
+    }
+
+    /**
+     * @param model the model.
+     * @return the serialized model.
+     * @throws IOException if the model cannot be serialized.
+     */
+    public static byte[] serialize(final Object model) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        try {
+            out.writeObject(model);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the shared model of the serialized form, deserialized only if
+     * not registered (or no longer softly reachable), and counts the
+     * reference. Every acquired model must be released with
+     * {@link #release(Object)}.
+     *
+     * @param serialized the serialized model.
+     * @return the shared model.
+     * @throws IOException if the model cannot be deserialized.
+     * @throws ClassNotFoundException if a class of the model is unknown.
+     */
+    public static Object acquire(final byte[] serialized) throws IOException,
+            ClassNotFoundException {
+        String key = hash(serialized);
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            Object model = entry == null ? null : entry.m_soft.get();
+            if (model == null) {
+                model = deserialize(serialized);
+                entry = new Entry(key, model);
+                ENTRIES.put(key, entry);
+            }
+            entry.m_strong = model;
+            entry.m_references++;
+            ACQUIRED.put(model, entry);
+            purge();
+            return model;
+        }
+    }
+
+    /**
+     * Releases one reference of an acquired model, the model is then only
+     * softly held if no other node references it. Models not acquired from
+     * the registry are ignored.
+     *
+     * @param model the model, may be null.
+     */
+    public static void release(final Object model) {
+        if (model == null) {
+            return;
+        }
+        synchronized (ENTRIES) {
+            Entry entry = ACQUIRED.get(model);
+            if (entry != null && --entry.m_references == 0) {
+                entry.m_strong = null;
+                ACQUIRED.remove(model);
+            }
+        }
+    }
+
+    /**
+     * @return the number of registered models, including the softly held
+     *         ones not yet collected.
+     */
+    public static int size() {
+        synchronized (ENTRIES) {
+            purge();
+            return ENTRIES.size();
+        }
+    }
+
+    /*
+     * Removes the entries of collected models.
+     */
+    private static void purge() {
+        Iterator<Entry> it = ENTRIES.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().m_soft.get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    private static Object deserialize(final byte[] serialized)
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(serialized));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String hash(final byte[] serialized) {
+        try {
+            byte[] digest =
+                    MessageDigest.getInstance("SHA-1").digest(serialized);
+            StringBuilder hex = new StringBuilder(2 * digest.length);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >>> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            // every Java platform implements SHA-1
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /*
+     * A registered model, strongly held while referenced.
+     */
+    private static final class Entry {
+
+        private final String m_key;
+
+        private final SoftReference<Object> m_soft;
+
+        private Object m_strong;
+
+        private int m_references;
+
+        Entry(final String key, final Object model) {
+            m_key = key;
+            m_soft = new SoftReference<Object>(model);
+        }
+
+        @Override
+        public String toString() {
+            return m_key + " (" + m_references + " references)";
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.meka.knime.utils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import weka.core.Instances;
+
+/**
+ * Caches the label scores of converted rows, so repeated rows (duplicate
+ * documents, re-scored records) are scored once. The cache is keyed by the
+ * converted attribute values, hashed once per row and compared exactly, and
+ * holds at most a fixed number of rows; the least recently used row is
+ * evicted first. The rows not in the cache are scored together by the
+ * wrapped scorer. Not thread safe, use one cache per thread.
+ *
+ * @author Fernando Benites
+ */
+public class PredictionCache implements BlockScorer {
+
+    /* The scorer of the rows not in the cache. */
+    private final BlockScorer m_scorer;
+
+    /* The cached scores, in access order. */
+    private final LinkedHashMap<Key, double[]> m_cache;
+
+    /* The rows of a block not in the cache. */
+    private final InstanceBlock m_missBlock;
+
+    /* Index of the missed rows in the scored block. */
+    private final int[] m_missIndex;
+
+    private long m_hits;
+
+    private long m_misses;
+
+    /**
+     * @param scorer the scorer of the rows not in the cache.
+     * @param header the instances the rows are converted for, the class
+     *            index is the number of labels.
+     * @param maxSize the maximal number of cached rows.
+     * @param blockCapacity the capacity of the scored blocks.
+     */
+    public PredictionCache(final BlockScorer scorer, final Instances header,
+            final int maxSize, final int blockCapacity) {
+        m_scorer = scorer;
+        m_missBlock = new InstanceBlock(header, blockCapacity);
+        m_missIndex = new int[blockCapacity];
+        m_cache = new LinkedHashMap<Key, double[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Key, double[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double[][] score(final InstanceBlock block) throws Exception {
+        double[][] values = block.getValues();
+        double[][] scores = new double[block.size()][];
+        m_missBlock.clear();
+        for (int r = 0; r < scores.length; r++) {
+            // the live values are only looked up, copied when cached
+            double[] cached = m_cache.get(new Key(values[r]));
+            if (cached != null) {
+                // the cached scores are never handed out
+                scores[r] = cached.clone();
+                m_hits++;
+            } else {
+                m_missIndex[m_missBlock.size()] = r;
+                m_missBlock.add(block, r);
+                m_misses++;
+            }
+        }
+        if (m_missBlock.size() > 0) {
+            double[][] missScores = m_scorer.score(m_missBlock);
+            for (int i = 0; i < missScores.length; i++) {
+                int r = m_missIndex[i];
+                scores[r] = missScores[i];
+                m_cache.put(new Key(values[r].clone()),
+                        missScores[i].clone());
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * @return the number of rows found in the cache.
+     */
+    public long getHits() {
+        return m_hits;
+    }
+
+    /**
+     * @return the number of rows scored by the wrapped scorer.
+     */
+    public long getMisses() {
+        return m_misses;
+    }
+
+    /**
+     * @return the number of cached rows.
+     */
+    public int size() {
+        return m_cache.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Cache hits: " + m_hits + ", misses: " + m_misses;
+    }
+
+    /*
+     * The values of a row, the hash computed once.
+     */
+    private static final class Key {
+
+        private final double[] m_values;
+
+        private final int m_hash;
+
+        Key(final double[] values) {
+            m_values = values;
+            m_hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            // bitwise, missing values (NaN) equal each other
+            return obj instanceof Key && m_hash == ((Key)obj).m_hash
+                    && Arrays.equals(m_values, ((Key)obj).m_values);
+        }
+    }
+}
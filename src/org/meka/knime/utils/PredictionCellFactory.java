@@ -0,0 +1,216 @@
+package org.meka.knime.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.collection.CollectionCellFactory;
+import org.knime.core.data.collection.SparseListCell;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCellFactory;
+import org.knime.core.data.vector.doublevector.DoubleVectorCellFactory;
+
+/**
+ * Creates the output cells of the label predictions of a row. Besides one
+ * column per label, the predictions can be packed into a single cell: the
+ * label scores as a double vector, the thresholded labels as a bit vector,
+ * or the scores of the k best labels as a sparse list (all other positions
+ * missing), which shrinks the output of data sets with many labels.
+ *
+ * @author Fernando Benites
+ */
+public class PredictionCellFactory {
+
+    /** One column per label. */
+    public static final String COLUMNS = "Columns";
+
+    /** The label scores in one double vector cell. */
+    public static final String VECTOR = "Double vector";
+
+    /** The thresholded labels in one bit vector cell. */
+    public static final String BIT_VECTOR = "Bit vector";
+
+    /** The scores of the k best labels in one sparse list cell. */
+    public static final String TOP_K = "Top k";
+
+    /** All output modes, in the order of the dialogs. */
+    public static final String[] MODES = {COLUMNS, VECTOR, BIT_VECTOR, TOP_K};
+
+    /* The thresholded label cells, immutable and shared by all rows. */
+    private static final DataCell[] LABEL_CELLS = {new IntCell(0),
+        new IntCell(1)};
+
+    /* The output mode. */
+    private final String m_mode;
+
+    /* The label names. */
+    private final List<String> m_labels;
+
+    /* True if the label columns hold the thresholded labels. */
+    private final boolean m_thresholded;
+
+    /* Number of labels in TOP_K mode. */
+    private final int m_k;
+
+    /* Heap of label indices in TOP_K mode, the lowest score on top. */
+    private final int[] m_heap;
+
+    /**
+     * @param mode one of {@link #MODES}.
+     * @param labels the label names.
+     * @param thresholded true if one column per label holds the thresholded
+     *            label (IntCell), false if it holds the score (DoubleCell).
+     * @param k number of labels in {@link #TOP_K} mode.
+     */
+    public PredictionCellFactory(final String mode, final List<String> labels,
+            final boolean thresholded, final int k) {
+        m_mode = mode == null ? COLUMNS : mode;
+        m_labels = labels;
+        m_thresholded = thresholded;
+        m_k = Math.max(1, Math.min(k, labels.size()));
+        m_heap = TOP_K.equals(m_mode) ? new int[m_k] : null;
+    }
+
+    /**
+     * @return true if the cells need the label thresholds.
+     */
+    public boolean needsThresholds() {
+        return BIT_VECTOR.equals(m_mode)
+                || (COLUMNS.equals(m_mode) && m_thresholded);
+    }
+
+    /**
+     * @return the spec of the created cells.
+     */
+    public DataTableSpec createSpec() {
+        if (VECTOR.equals(m_mode)) {
+            return new DataTableSpec(new DataColumnSpecCreator("Scores",
+                    DoubleVectorCellFactory.TYPE).createSpec());
+        }
+        if (BIT_VECTOR.equals(m_mode)) {
+            return new DataTableSpec(new DataColumnSpecCreator("Labels",
+                    DenseBitVectorCell.TYPE).createSpec());
+        }
+        if (TOP_K.equals(m_mode)) {
+            DataColumnSpecCreator creator = new DataColumnSpecCreator(
+                    "Top " + m_k + " labels",
+                    SparseListCell.getCollectionType(DoubleCell.TYPE));
+            creator.setElementNames(m_labels.toArray(new String[0]));
+            return new DataTableSpec(creator.createSpec());
+        }
+        DataColumnSpec[] specs = new DataColumnSpec[m_labels.size()];
+        DataType type = m_thresholded ? IntCell.TYPE : DoubleCell.TYPE;
+        for (int l = 0; l < specs.length; l++) {
+            specs[l] = new DataColumnSpecCreator(m_labels.get(l), type)
+                    .createSpec();
+        }
+        return new DataTableSpec(specs);
+    }
+
+    /**
+     * Creates the cells of one row. Not thread safe in {@link #TOP_K} mode.
+     *
+     * @param scores the label scores.
+     * @param thresholds the label thresholds, only used if
+     *            {@link #needsThresholds()}.
+     * @return the cells.
+     */
+    public DataCell[] createCells(final double[] scores,
+            final double[] thresholds) {
+        int nrLabels = m_labels.size();
+        if (VECTOR.equals(m_mode)) {
+            return new DataCell[]{DoubleVectorCellFactory.createCell(
+                    scores.length == nrLabels ? scores
+                            : Arrays.copyOf(scores, nrLabels))};
+        }
+        if (BIT_VECTOR.equals(m_mode)) {
+            DenseBitVectorCellFactory factory =
+                    new DenseBitVectorCellFactory(nrLabels);
+            for (int l = 0; l < nrLabels; l++) {
+                // same rule as ThresholdUtils.threshold
+                if (scores[l] >= thresholds[l]) {
+                    factory.set(l);
+                }
+            }
+            return new DataCell[]{factory.createDataCell()};
+        }
+        if (TOP_K.equals(m_mode)) {
+            return new DataCell[]{createTopK(scores)};
+        }
+        DataCell[] cells = new DataCell[nrLabels];
+        for (int l = 0; l < nrLabels; l++) {
+            cells[l] = m_thresholded
+                    ? LABEL_CELLS[scores[l] >= thresholds[l] ? 1 : 0]
+                    : new DoubleCell(scores[l]);
+        }
+        return cells;
+    }
+
+    /*
+     * Selects the k best labels with a min-heap, O(L log k).
+     */
+    private SparseListCell createTopK(final double[] scores) {
+        int size = 0;
+        for (int l = 0; l < m_labels.size(); l++) {
+            if (size < m_k) {
+                m_heap[size] = l;
+                siftUp(scores, size++);
+            } else if (scores[l] > scores[m_heap[0]]) {
+                m_heap[0] = l;
+                siftDown(scores, 0, size);
+            }
+        }
+        // ascending label indices
+        Arrays.sort(m_heap, 0, size);
+        DataCell[] elements = new DataCell[size];
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = m_heap[i];
+            elements[i] = new DoubleCell(scores[m_heap[i]]);
+        }
+        return CollectionCellFactory.createSparseListCell(m_labels.size(),
+                elements, indices, DataType.getMissingCell());
+    }
+
+    private void siftUp(final double[] scores, final int pos) {
+        int i = pos;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (scores[m_heap[parent]] <= scores[m_heap[i]]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(final double[] scores, final int pos,
+            final int size) {
+        int i = pos;
+        while (true) {
+            int smallest = i;
+            for (int c = 2 * i + 1; c <= 2 * i + 2 && c < size; c++) {
+                if (scores[m_heap[c]] < scores[m_heap[smallest]]) {
+                    smallest = c;
+                }
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        int tmp = m_heap[i];
+        m_heap[i] = m_heap[j];
+        m_heap[j] = tmp;
+    }
+}
@@ -0,0 +1,60 @@
+package org.meka.knime.utils;
+
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * A dense instance whose values are overwritten in place, so one instance
+ * can be reused for every row a thread converts. {@link DenseInstance}
+ * copies its whole value array on every
+ * {@link DenseInstance#setValue(int, double)}, which costs one array per
+ * converted value (and per label reset before a prediction). The instance
+ * must not be kept by the classifier between two rows; copies
+ * ({@link #copy()}) are ordinary dense instances with their own values.
+ *
+ * @author Fernando Benites
+ */
+public class ReusableInstance extends DenseInstance {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param header the instances the values belong to.
+     */
+    public ReusableInstance(final Instances header) {
+        super(1.0, new double[header.numAttributes()]);
+        setDataset(header);
+    }
+
+    /**
+     * Sets the value in place, without copying the value array.
+     *
+     * @param attIndex the attribute index.
+     * @param value the value.
+     */
+    @Override
+    public void setValue(final int attIndex, final double value) {
+        m_AttValues[attIndex] = value;
+    }
+
+    /**
+     * @return the values, overwritten in place by the next row.
+     */
+    public double[] getValues() {
+        return m_AttValues;
+    }
+
+    /**
+     * A dense instance with a copy of the values, the values of a
+     * {@link DenseInstance} copy would be shared and overwritten with the
+     * next row.
+     *
+     * @return the copy.
+     */
+    @Override
+    public Object copy() {
+        DenseInstance result = new DenseInstance(m_Weight, m_AttValues.clone());
+        result.setDataset(m_Dataset);
+        return result;
+    }
+}
@@ -0,0 +1,189 @@
+package org.meka.knime.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.knime.base.data.util.DataCellStringMapper;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Measures the bytes allocated per row by the stages of the scoring loop of
+ * the predictor, with the allocation counter of the current thread
+ * ({@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}):
+ * the conversion of a row into a new instance (the path before the reusable
+ * instances) and into a reused {@link InstanceBlock}, and the output cells
+ * of the {@link PredictionCellFactory} modes. The allocations of the
+ * classifier are not measured, they depend on the MEKA model.
+ *
+ * @author Fernando Benites
+ */
+public final class ScoringAllocationBenchmark {
+
+    /* Number of distinct rows, cycled through. */
+    private static final int NR_ROWS = 1024;
+
+    private ScoringAllocationBenchmark() {
+        // main only
+    }
+
+    /* One stage of the loop, applied to one row. */
+    private interface Stage {
+        void apply(int r) throws Exception;
+    }
+
+    /**
+     * @param args optionally the number of labels, the number of features
+     *            and the number of measured rows.
+     * @throws Exception if a stage fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        final int nrLabels = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int nrFeatures = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long n = args.length > 2 ? Long.parseLong(args[2]) : 1000000L;
+
+        // the labels first, as the training data of the learner
+        ArrayList<Attribute> atts = new ArrayList<Attribute>();
+        List<String> labels = new ArrayList<String>();
+        for (int l = 0; l < nrLabels; l++) {
+            List<String> values = new ArrayList<String>();
+            values.add("0");
+            values.add("1");
+            atts.add(new Attribute("L" + l, values));
+            labels.add("L" + l);
+        }
+        for (int f = 0; f < nrFeatures; f++) {
+            atts.add(new Attribute("F" + f));
+        }
+        final Instances header = new Instances("Benchmark", atts, 0);
+        header.setClassIndex(nrLabels);
+        final int[] order = new int[atts.size()];
+        for (int a = 0; a < order.length; a++) {
+            order[a] = a;
+        }
+        final DataCellStringMapper mapper = new DataCellStringMapper();
+        Random random = new Random(1);
+        final DataRow[] rows = new DataRow[NR_ROWS];
+        final double[][] scores = new double[NR_ROWS][nrLabels];
+        for (int r = 0; r < NR_ROWS; r++) {
+            DataCell[] cells = new DataCell[atts.size()];
+            for (int a = 0; a < cells.length; a++) {
+                cells[a] = new DoubleCell(a < nrLabels
+                        ? random.nextInt(2) : random.nextGaussian());
+            }
+            rows[r] = new DefaultRow(RowKey.createRowKey(r), cells);
+            for (int l = 0; l < nrLabels; l++) {
+                scores[r][l] = random.nextDouble();
+            }
+        }
+        final double[] thresholds = new double[nrLabels];
+        Arrays.fill(thresholds, 0.5);
+        final InstanceBlock block =
+                new InstanceBlock(header, InstanceBlock.DEFAULT_CAPACITY);
+        final PredictionCellFactory columns = new PredictionCellFactory(
+                PredictionCellFactory.COLUMNS, labels, false, 0);
+        final PredictionCellFactory thresholded = new PredictionCellFactory(
+                PredictionCellFactory.COLUMNS, labels, true, 0);
+        final PredictionCellFactory vector = new PredictionCellFactory(
+                PredictionCellFactory.VECTOR, labels, false, 0);
+        final PredictionCellFactory topk = new PredictionCellFactory(
+                PredictionCellFactory.TOP_K, labels, false, 5);
+        // the results are kept, so that they are not optimized away
+        final DataCell[][] sink = new DataCell[1][];
+        final DataRow[] out = new DataRow[1];
+        final Instance[] kept = new Instance[1];
+
+        System.out.println(nrLabels + " labels, " + nrFeatures
+                + " features, " + n + " rows");
+        measure("Convert, new instance per row", n, new Stage() {
+            @Override
+            public void apply(final int r) {
+                Instance x = MekaConverter.convertToInstance(rows[r], header,
+                        mapper, order);
+                for (int l = 0; l < nrLabels; l++) {
+                    x.setValue(l, 0.0);
+                }
+                kept[0] = x;
+            }
+        });
+        measure("Convert, reused instance block", n, new Stage() {
+            @Override
+            public void apply(final int r) {
+                if (block.isFull()) {
+                    block.clear();
+                }
+                kept[0] = block.add(rows[r], mapper, order, true);
+            }
+        });
+        measure("Cells, scores per label", n, new Stage() {
+            @Override
+            public void apply(final int r) {
+                sink[0] = columns.createCells(scores[r], thresholds);
+            }
+        });
+        measure("Cells, thresholded labels", n, new Stage() {
+            @Override
+            public void apply(final int r) {
+                sink[0] = thresholded.createCells(scores[r], thresholds);
+            }
+        });
+        measure("Cells, double vector", n, new Stage() {
+            @Override
+            public void apply(final int r) {
+                sink[0] = vector.createCells(scores[r], thresholds);
+            }
+        });
+        measure("Cells, top 5", n, new Stage() {
+            @Override
+            public void apply(final int r) {
+                sink[0] = topk.createCells(scores[r], thresholds);
+            }
+        });
+        // with the cells of the previous stage
+        measure("Output row", n, new Stage() {
+            @Override
+            public void apply(final int r) {
+                out[0] = new DefaultRow(rows[r].getKey(), sink[0]);
+            }
+        });
+    }
+
+    /*
+     * Runs the stage ten times over the distinct rows to warm up, then for n
+     * rows, and prints the bytes allocated per row.
+     */
+    private static void measure(final String name, final long n,
+            final Stage stage) throws Exception {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean)ManagementFactory
+                        .getThreadMXBean();
+        if (!bean.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException(
+                    "The JVM does not count the allocated bytes per thread");
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        for (int r = 0; r < 10 * NR_ROWS; r++) {
+            stage.apply(r % NR_ROWS);
+        }
+        long bytes = bean.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (long i = 0; i < n; i++) {
+            stage.apply((int)(i % NR_ROWS));
+        }
+        long time = System.nanoTime() - start;
+        bytes = bean.getThreadAllocatedBytes(thread) - bytes;
+        System.out.println(String.format("%-34s %10.1f bytes/row %8.1f ns/row",
+                name, bytes / (double)n, time / (double)n));
+    }
+}
@@ -0,0 +1,403 @@
+package org.meka.knime.utils;
+
+import java.util.Arrays;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+
+/**
+ * Multi-label evaluation measures accumulated row by row. Only counts and
+ * sums are kept (per label confusion counts, example based sums and the
+ * ranking accumulators), so the memory is constant in the number of rows
+ * and the predictions need not be retained as by
+ * {@link meka.classifiers.multilabel.Evaluation#testClassifier}. Partial
+ * evaluations of disjoint rows can be merged.
+ *
+ * @author Fernando Benites
+ */
+public class StreamingEvaluation {
+
+    /**
+     * The names of the measures of {@link #getMeasures()}, in this order.
+     */
+    public static final String[] MEASURES = {"N", "L", "Hamming loss",
+        "Exact match", "Accuracy", "Precision (example based)",
+        "Recall (example based)", "F1 (example based)",
+        "F1 (micro averaged)", "F1 (macro averaged by label)", "One error",
+        "Ranking loss"};
+
+    /* Number of labels. */
+    private final int m_nrLabels;
+
+    /* Number of evaluated rows. */
+    private long m_nrRows;
+
+    /* Per label confusion counts. */
+    private final long[] m_tp;
+
+    private final long[] m_fp;
+
+    private final long[] m_fn;
+
+    /* Rows with all labels predicted correctly. */
+    private long m_exactMatches;
+
+    /* Sums of the example based measures. */
+    private double m_accuracy;
+
+    private double m_precision;
+
+    private double m_recall;
+
+    private double m_f1;
+
+    /* Sum of the ranking losses and number of rows ranked. */
+    private double m_rankingLoss;
+
+    private long m_rankedRows;
+
+    /* Rows whose best ranked label is not relevant. */
+    private long m_oneErrors;
+
+    /* Rows with at least one relevant label. */
+    private long m_relevantRows;
+
+    /* Scratch for the ranking loss, the scores of a row by relevance. */
+    private double[] m_relevantScores;
+
+    private double[] m_irrelevantScores;
+
+    /**
+     * @param nrLabels the number of labels.
+     */
+    public StreamingEvaluation(final int nrLabels) {
+        m_nrLabels = nrLabels;
+        m_tp = new long[nrLabels];
+        m_fp = new long[nrLabels];
+        m_fn = new long[nrLabels];
+    }
+
+    /**
+     * Adds one row. Not thread safe, use one evaluation per thread and
+     * {@link #merge(StreamingEvaluation)} them.
+     *
+     * @param scores the label scores.
+     * @param truth the true labels (0 or 1).
+     * @param thresholds the label thresholds, a label is predicted if its
+     *            score is at least the threshold.
+     */
+    public void add(final double[] scores, final int[] truth,
+            final double[] thresholds) {
+        int intersection = 0;
+        int predicted = 0;
+        int relevant = 0;
+        int best = -1;
+        for (int l = 0; l < m_nrLabels; l++) {
+            // same rule as ThresholdUtils.threshold
+            boolean pred = scores[l] >= thresholds[l];
+            boolean rel = truth[l] == 1;
+            if (pred && rel) {
+                m_tp[l]++;
+                intersection++;
+            } else if (pred) {
+                m_fp[l]++;
+            } else if (rel) {
+                m_fn[l]++;
+            }
+            if (pred) {
+                predicted++;
+            }
+            if (rel) {
+                relevant++;
+            }
+            if (best < 0 || scores[l] > scores[best]) {
+                best = l;
+            }
+        }
+        m_nrRows++;
+        int union = predicted + relevant - intersection;
+        if (intersection == union) {
+            m_exactMatches++;
+        }
+        m_accuracy += union == 0 ? 1.0 : intersection / (double)union;
+        m_precision += predicted == 0 ? (relevant == 0 ? 1.0 : 0.0)
+                : intersection / (double)predicted;
+        m_recall += relevant == 0 ? (predicted == 0 ? 1.0 : 0.0)
+                : intersection / (double)relevant;
+        m_f1 += predicted + relevant == 0 ? 1.0
+                : 2.0 * intersection / (predicted + relevant);
+        if (relevant > 0) {
+            m_relevantRows++;
+            if (truth[best] != 1) {
+                m_oneErrors++;
+            }
+            if (relevant < m_nrLabels) {
+                m_rankingLoss += rankingLoss(scores, truth);
+                m_rankedRows++;
+            }
+        }
+    }
+
+    /*
+     * The fraction of (relevant, irrelevant) label pairs in which the
+     * irrelevant label is ranked at least as high as the relevant one.
+     */
+    private double rankingLoss(final double[] scores, final int[] truth) {
+        if (m_relevantScores == null) {
+            m_relevantScores = new double[m_nrLabels];
+            m_irrelevantScores = new double[m_nrLabels];
+        }
+        int r = 0;
+        int q = 0;
+        for (int l = 0; l < m_nrLabels; l++) {
+            if (truth[l] == 1) {
+                m_relevantScores[r++] = scores[l];
+            } else {
+                m_irrelevantScores[q++] = scores[l];
+            }
+        }
+        Arrays.sort(m_relevantScores, 0, r);
+        Arrays.sort(m_irrelevantScores, 0, q);
+        // for every relevant score the irrelevant scores not below it
+        long misordered = 0;
+        int j = 0;
+        for (int i = 0; i < r; i++) {
+            while (j < q && m_irrelevantScores[j] < m_relevantScores[i]) {
+                j++;
+            }
+            misordered += q - j;
+        }
+        return misordered / ((double)r * q);
+    }
+
+    /**
+     * Adds the counts of another evaluation over the same labels.
+     *
+     * @param other the other evaluation.
+     */
+    public void merge(final StreamingEvaluation other) {
+        if (other.m_nrLabels != m_nrLabels) {
+            throw new IllegalArgumentException("Different number of labels: "
+                    + other.m_nrLabels + " != " + m_nrLabels);
+        }
+        m_nrRows += other.m_nrRows;
+        for (int l = 0; l < m_nrLabels; l++) {
+            m_tp[l] += other.m_tp[l];
+            m_fp[l] += other.m_fp[l];
+            m_fn[l] += other.m_fn[l];
+        }
+        m_exactMatches += other.m_exactMatches;
+        m_accuracy += other.m_accuracy;
+        m_precision += other.m_precision;
+        m_recall += other.m_recall;
+        m_f1 += other.m_f1;
+        m_rankingLoss += other.m_rankingLoss;
+        m_rankedRows += other.m_rankedRows;
+        m_oneErrors += other.m_oneErrors;
+        m_relevantRows += other.m_relevantRows;
+    }
+
+    /**
+     * @return the number of labels.
+     */
+    public int getNrLabels() {
+        return m_nrLabels;
+    }
+
+    /**
+     * @return the number of evaluated rows.
+     */
+    public long getNrRows() {
+        return m_nrRows;
+    }
+
+    /**
+     * @return the fraction of wrongly predicted labels.
+     */
+    public double getHammingLoss() {
+        long errors = 0;
+        for (int l = 0; l < m_nrLabels; l++) {
+            errors += m_fp[l] + m_fn[l];
+        }
+        return errors / Math.max(1.0, (double)m_nrRows * m_nrLabels);
+    }
+
+    /**
+     * @return the fraction of rows with all labels predicted correctly.
+     */
+    public double getExactMatch() {
+        return m_exactMatches / Math.max(1.0, m_nrRows);
+    }
+
+    /**
+     * @return the Jaccard index of predicted and true labels, averaged over
+     *         the rows.
+     */
+    public double getAccuracy() {
+        return m_accuracy / Math.max(1.0, m_nrRows);
+    }
+
+    /**
+     * @return the example based precision.
+     */
+    public double getExamplePrecision() {
+        return m_precision / Math.max(1.0, m_nrRows);
+    }
+
+    /**
+     * @return the example based recall.
+     */
+    public double getExampleRecall() {
+        return m_recall / Math.max(1.0, m_nrRows);
+    }
+
+    /**
+     * @return the example based F-measure.
+     */
+    public double getExampleF1() {
+        return m_f1 / Math.max(1.0, m_nrRows);
+    }
+
+    /**
+     * @return the F-measure of the summed label counts.
+     */
+    public double getMicroF1() {
+        long tp = 0;
+        long errors = 0;
+        for (int l = 0; l < m_nrLabels; l++) {
+            tp += m_tp[l];
+            errors += m_fp[l] + m_fn[l];
+        }
+        return f1(tp, errors);
+    }
+
+    /**
+     * @return the F-measure of the labels, averaged over the labels.
+     */
+    public double getMacroF1() {
+        double sum = 0;
+        for (int l = 0; l < m_nrLabels; l++) {
+            sum += getF1(l);
+        }
+        return sum / Math.max(1, m_nrLabels);
+    }
+
+    /**
+     * @param label the label index.
+     * @return the F-measure of the label, 1 if it is neither relevant nor
+     *         predicted in any row.
+     */
+    public double getF1(final int label) {
+        return f1(m_tp[label], m_fp[label] + m_fn[label]);
+    }
+
+    /**
+     * @param label the label index.
+     * @return the rows in which the label is predicted and relevant.
+     */
+    public long getTruePositives(final int label) {
+        return m_tp[label];
+    }
+
+    /**
+     * @param label the label index.
+     * @return the rows in which the label is predicted but not relevant.
+     */
+    public long getFalsePositives(final int label) {
+        return m_fp[label];
+    }
+
+    /**
+     * @param label the label index.
+     * @return the rows in which the label is relevant but not predicted.
+     */
+    public long getFalseNegatives(final int label) {
+        return m_fn[label];
+    }
+
+    /**
+     * @return the ranking loss, averaged over the rows with relevant and
+     *         irrelevant labels.
+     */
+    public double getRankingLoss() {
+        return m_rankingLoss / Math.max(1, m_rankedRows);
+    }
+
+    /**
+     * @return the fraction of rows with a relevant label whose best ranked
+     *         label is not relevant.
+     */
+    public double getOneError() {
+        return m_oneErrors / Math.max(1.0, m_relevantRows);
+    }
+
+    private static double f1(final long tp, final long errors) {
+        return tp + errors == 0 ? 1.0 : 2.0 * tp / (2.0 * tp + errors);
+    }
+
+    /**
+     * @return the values of the {@link #MEASURES}.
+     */
+    public double[] getMeasures() {
+        return new double[]{m_nrRows, m_nrLabels, getHammingLoss(),
+            getExactMatch(), getAccuracy(), getExamplePrecision(),
+            getExampleRecall(), getExampleF1(), getMicroF1(), getMacroF1(),
+            getOneError(), getRankingLoss()};
+    }
+
+    /**
+     * @return the spec of the measures table, one row per measure.
+     */
+    public static DataTableSpec createMeasuresSpec() {
+        return new DataTableSpec(new DataColumnSpecCreator("Value",
+                DoubleCell.TYPE).createSpec());
+    }
+
+    /**
+     * @param evaluation the evaluation, null for an empty table.
+     * @param exec to create the table.
+     * @return the measures, one row per measure.
+     */
+    public static BufferedDataTable createMeasuresTable(
+            final StreamingEvaluation evaluation,
+            final ExecutionContext exec) {
+        BufferedDataContainer container =
+                exec.createDataContainer(createMeasuresSpec());
+        if (evaluation != null) {
+            double[] values = evaluation.getMeasures();
+            for (int m = 0; m < MEASURES.length; m++) {
+                container.addRowToTable(new DefaultRow(
+                        new RowKey(MEASURES[m]),
+                        new DataCell[]{new DoubleCell(values[m])}));
+            }
+        }
+        container.close();
+        return container.getTable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        double[] values = getMeasures();
+        for (int m = 0; m < MEASURES.length; m++) {
+            text.append(MEASURES[m]).append(": ");
+            if (m < 2) {
+                text.append((long)values[m]);
+            } else {
+                text.append(values[m]);
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,328 @@
+package org.meka.knime.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import meka.classifiers.multilabel.MultiLabelClassifier;
+import meka.core.MLUtils;
+
+import org.knime.core.node.ExecutionMonitor;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Calibrates the label thresholds of the MEKA strategies PCut1 and PCutL on a
+ * set of predictions. The scores are copied into primitive arrays and sorted
+ * once (all scores for PCut1, every label on its own for PCutL, the labels
+ * concurrently); the thresholds are the same as the ones of
+ * {@link meka.core.ThresholdUtils#calibrateThreshold(ArrayList, double)}.
+ * The strategy F1 optimizes the threshold of every label for its F-measure.
+ *
+ * @author Fernando Benites
+ */
+public class ThresholdCalibrator {
+
+    /** One threshold for all labels. */
+    public static final String PCUT1 = "PCut1";
+
+    /** One threshold per label. */
+    public static final String PCUTL = "PCutL";
+
+    /** One threshold per label maximizing the label's F-measure. */
+    public static final String F1 = "F1";
+
+    /* The predictions, one array of label scores per row. */
+    private final List<double[]> m_predictions;
+
+    /* Number of labels. */
+    private final int m_nrLabels;
+
+    /* Number of threads for the per label calibration. */
+    private final int m_nrThreads;
+
+    /**
+     * @param predictions the label scores, one array per row.
+     * @param nrLabels the number of labels.
+     * @param nrThreads the number of threads used for PCutL.
+     */
+    public ThresholdCalibrator(final List<double[]> predictions,
+            final int nrLabels, final int nrThreads) {
+        m_predictions = predictions;
+        m_nrLabels = nrLabels;
+        m_nrThreads = Math.max(1, nrThreads);
+    }
+
+    /**
+     * Predicts the instances as {@link meka.classifiers.multilabel.Evaluation}
+     * does, with the labels set to 0.
+     *
+     * @param classifier the trained classifier.
+     * @param data the instances, the class index is the number of labels.
+     * @param exec to report progress and check for cancellation.
+     * @return the label scores, one array per instance.
+     * @throws Exception if the classifier fails or the execution is canceled.
+     */
+    public static List<double[]> predict(final MultiLabelClassifier classifier,
+            final Instances data, final ExecutionMonitor exec)
+            throws Exception {
+        int nrLabels = data.classIndex();
+        int n = data.numInstances();
+        ArrayList<double[]> predictions = new ArrayList<double[]>(n);
+        // one instance for all rows, overwritten in place
+        ReusableInstance x = new ReusableInstance(data);
+        int nrAttributes = data.numAttributes();
+        for (int i = 0; i < n; i++) {
+            Instance instance = data.instance(i);
+            x.setWeight(instance.weight());
+            for (int a = nrLabels; a < nrAttributes; a++) {
+                x.setValue(a, instance.value(a));
+            }
+            for (int l = 0; l < nrLabels; l++) {
+                x.setValue(l, 0.0);
+            }
+            predictions.add(classifier.distributionForInstance(x));
+            exec.setProgress(i / (double)n, "Calibrating thresholds");
+            exec.checkCanceled();
+        }
+        return predictions;
+    }
+
+    /**
+     * @param strategy {@link #PCUT1}, {@link #PCUTL} or {@link #F1}.
+     * @param data the predicted instances, providing the label cardinalities
+     *            and the true labels.
+     * @return one threshold per label.
+     */
+    public double[] getThresholds(final String strategy,
+            final Instances data) {
+        if (PCUT1.equals(strategy)) {
+            double[] t = new double[m_nrLabels];
+            Arrays.fill(t, calibrate(MLUtils.labelCardinality(data)));
+            return t;
+        }
+        if (PCUTL.equals(strategy)) {
+            return calibrate(MLUtils.labelCardinalities(data));
+        }
+        if (F1.equals(strategy)) {
+            return optimizeF1(data);
+        }
+        throw new IllegalArgumentException("Unknown threshold strategy: "
+                + strategy);
+    }
+
+    /**
+     * PCut1: one threshold, such that the average number of scores above it
+     * per row matches the label cardinality.
+     *
+     * @param cardinality the label cardinality.
+     * @return the threshold.
+     */
+    public double calibrate(final double cardinality) {
+        int n = m_predictions.size();
+        if (n == 0) {
+            return 0.5;
+        }
+        double[] all = new double[n * m_nrLabels];
+        int k = 0;
+        for (double[] y : m_predictions) {
+            System.arraycopy(y, 0, all, k, m_nrLabels);
+            k += m_nrLabels;
+        }
+        Arrays.parallelSort(all);
+        return threshold(all, n, cardinality);
+    }
+
+    /**
+     * PCutL: one threshold per label, such that the frequency of scores above
+     * it matches the label's frequency. The labels are calibrated
+     * concurrently.
+     *
+     * @param cardinalities the frequency of each label.
+     * @return the thresholds.
+     */
+    public double[] calibrate(final double[] cardinalities) {
+        final double[] thresholds = new double[cardinalities.length];
+        forEachLabel(cardinalities.length, false, new LabelTask() {
+            @Override
+            public void run(final int label, final double[] column,
+                    final double[] unused) {
+                for (int i = 0; i < column.length; i++) {
+                    column[i] = m_predictions.get(i)[label];
+                }
+                Arrays.sort(column);
+                thresholds[label] = column.length == 0 ? 0.5
+                        : threshold(column, column.length,
+                                cardinalities[label]);
+            }
+        });
+        return thresholds;
+    }
+
+    /**
+     * F1: one threshold per label maximizing the label's F-measure on the
+     * predictions. The scores of the positive and of the negative rows of a
+     * label are sorted and swept once from the highest score down, the
+     * labels concurrently. The threshold lies halfway between the lowest
+     * score predicted positive and the next lower score, so that
+     * {@link meka.core.ThresholdUtils#threshold(double[], double[])} yields
+     * the optimal predictions.
+     *
+     * @param data the instances with the true labels, in the order of the
+     *            predictions.
+     * @return the thresholds.
+     */
+    public double[] optimizeF1(final Instances data) {
+        final double[] thresholds = new double[m_nrLabels];
+        forEachLabel(m_nrLabels, true, new LabelTask() {
+            @Override
+            public void run(final int label, final double[] pos,
+                    final double[] neg) {
+                int nrPos = 0;
+                int nrNeg = 0;
+                for (int i = 0; i < pos.length; i++) {
+                    double score = m_predictions.get(i)[label];
+                    if (Math.round(data.instance(i).value(label)) == 1) {
+                        pos[nrPos++] = score;
+                    } else {
+                        neg[nrNeg++] = score;
+                    }
+                }
+                Arrays.sort(pos, 0, nrPos);
+                Arrays.sort(neg, 0, nrNeg);
+                thresholds[label] = sweepF1(pos, nrPos, neg, nrNeg);
+            }
+        });
+        return thresholds;
+    }
+
+    /*
+     * The threshold maximizing 2tp / (2tp + fp + fn) = 2tp / (predicted + P)
+     * for the sorted scores of the P positive and the negative rows. Without
+     * any positive row nothing is predicted.
+     */
+    private static double sweepF1(final double[] pos, final int nrPos,
+            final double[] neg, final int nrNeg) {
+        if (nrPos + nrNeg == 0) {
+            return 0.5;
+        }
+        double max = Math.max(nrPos > 0 ? pos[nrPos - 1]
+                : Double.NEGATIVE_INFINITY, nrNeg > 0 ? neg[nrNeg - 1]
+                : Double.NEGATIVE_INFINITY);
+        // predict nothing
+        double best = nrPos == 0 ? 1.0 : 0.0;
+        double threshold = Math.nextUp(max);
+        int p = nrPos - 1;
+        int q = nrNeg - 1;
+        long tp = 0;
+        long predicted = 0;
+        while (p >= 0 || q >= 0) {
+            double score = Math.max(p >= 0 ? pos[p] : Double.NEGATIVE_INFINITY,
+                    q >= 0 ? neg[q] : Double.NEGATIVE_INFINITY);
+            while (p >= 0 && pos[p] == score) {
+                tp++;
+                predicted++;
+                p--;
+            }
+            while (q >= 0 && neg[q] == score) {
+                predicted++;
+                q--;
+            }
+            double f1 = 2.0 * tp / (predicted + nrPos);
+            if (f1 > best) {
+                best = f1;
+                double next = Math.max(p >= 0 ? pos[p]
+                        : Double.NEGATIVE_INFINITY, q >= 0 ? neg[q]
+                        : Double.NEGATIVE_INFINITY);
+                threshold = next == Double.NEGATIVE_INFINITY ? score
+                        : (score + next) / 2.0;
+                if (threshold <= next) {
+                    // adjacent doubles
+                    threshold = score;
+                }
+            }
+        }
+        return threshold;
+    }
+
+    /*
+     * The calibration of one label, with one or two scratch arrays of one
+     * entry per prediction owned by the calling thread.
+     */
+    private interface LabelTask {
+        void run(int label, double[] scratch1, double[] scratch2);
+    }
+
+    /*
+     * Runs the task for every label, the labels are distributed over the
+     * worker threads. The second scratch array is null unless requested.
+     */
+    private void forEachLabel(final int nrLabels, final boolean twoScratch,
+            final LabelTask task) {
+        final AtomicInteger next = new AtomicInteger();
+        final Throwable[] error = new Throwable[1];
+        Thread[] workers = new Thread[Math.min(m_nrThreads, nrLabels)];
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = new Thread("Threshold calibration " + w) {
+                @Override
+                public void run() {
+                    try {
+                        double[] scratch1 = new double[m_predictions.size()];
+                        double[] scratch2 = twoScratch
+                                ? new double[m_predictions.size()] : null;
+                        int l;
+                        while ((l = next.getAndIncrement()) < nrLabels) {
+                            task.run(l, scratch1, scratch2);
+                        }
+                    } catch (Throwable th) {
+                        synchronized (error) {
+                            error[0] = th;
+                        }
+                    }
+                }
+            };
+            workers[w].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Threshold calibration "
+                        + "interrupted", ie);
+            }
+        }
+        synchronized (error) {
+            if (error[0] != null) {
+                throw new IllegalStateException("Threshold calibration "
+                        + "failed: " + error[0].getMessage(), error[0]);
+            }
+        }
+    }
+
+    /*
+     * The formula of ThresholdUtils.calibrateThreshold on the sorted scores
+     * of n rows. Indices MEKA would read out of range are clamped.
+     */
+    private static double threshold(final double[] sorted, final int n,
+            final double cardinality) {
+        int size = sorted.length;
+        int i = size - (int)Math.round(cardinality * n);
+        if (n == size) {
+            if (i + 1 == n) {
+                // as in MEKA
+                return sorted[Math.max(0, n - 2)] + sorted[n - 1] / 2.0;
+            }
+            if (i + 1 >= n) {
+                return 1.0;
+            }
+            i = Math.max(0, i);
+            return Math.max((sorted[i] + sorted[i + 1]) / 2.0, 0.00001);
+        }
+        i = Math.min(Math.max(0, i), size - 1);
+        int j = Math.min(Math.max(i + 1, n - 1), size - 1);
+        return Math.max((sorted[i] + sorted[j]) / 2.0, 0.00001);
+    }
+}